@@ -1,53 +1,127 @@
 package com.vaadin.demo;
 
 import com.vaadin.demo.config.AIDocsProperties;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.segment.TextSegment;
+import com.vaadin.demo.index.TenantIndexEndpoint;
+import com.vaadin.demo.index.TenantIndexes;
+import com.vaadin.demo.rag.ChatSessions;
+import com.vaadin.demo.rag.ContextPackingAggregator;
+import com.vaadin.demo.rag.ExpandingContentRetriever;
+import com.vaadin.demo.rag.KeywordQueryTransformer;
+import com.vaadin.demo.rag.RetrievalFilter;
+import com.vaadin.demo.rag.SpeculativeQueryRouter;
+import com.vaadin.demo.rag.TenantQueryRouter;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.ollama.OllamaChatModel;
 import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
 import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
-import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.rag.query.transformer.ExpandingQueryTransformer;
+import dev.langchain4j.rag.query.transformer.QueryTransformer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.QdrantGrpcClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @EnableConfigurationProperties({AIDocsProperties.class})
-public class AIConfig {
+public class AIConfig implements DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(AIConfig.class);
+    private static final int RETRIEVAL_THREADS = 8;
+    private static final int RETRIEVAL_QUEUE_SIZE = 32;
     private final AIDocsProperties aiDocsProperties;
+    private final ExecutorService retrievalExecutor;
 
     @Autowired
     public AIConfig(AIDocsProperties aiDocsProperties) {
         this.aiDocsProperties = aiDocsProperties;
+        this.retrievalExecutor = newRetrievalExecutor();
+    }
+
+    /**
+     * Creates the executor that runs the parallel searches of query expansion. Its queue is bounded and
+     * discards tasks when full, so a busy pool drops variants instead of delaying retrieval. It is not a
+     * bean, as an {@link java.util.concurrent.Executor} bean would replace Spring Boot's task executor.
+     *
+     * @return a fixed-size executor service with named daemon threads
+     */
+    private static ExecutorService newRetrievalExecutor() {
+        var threadFactory = new CustomizableThreadFactory("retrieval-");
+        threadFactory.setDaemon(true);
+        return new ThreadPoolExecutor(RETRIEVAL_THREADS, RETRIEVAL_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(RETRIEVAL_QUEUE_SIZE), threadFactory, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @Override
+    public void destroy() {
+        retrievalExecutor.shutdownNow();
     }
 
     /**
-     * Provides an {@link EmbeddingStore} for managing text segments, backed by Qdrant vector database.
+     * Provides the {@link QdrantClient} shared by the embedding stores of all tenants.
      * Qdrant is specifically designed for vector similarity search and provides excellent performance
      * for embedding storage and retrieval operations.
      *
-     * @return a configured Qdrant embedding store for text segments
+     * @return a client connected to the Qdrant gRPC port
      */
     @Bean
-    public EmbeddingStore<TextSegment> embeddingStore() {
-        return QdrantEmbeddingStore.builder()
-                .host("qdrant-service")  // Kubernetes service name
-                .port(6334)              // Qdrant gRPC port (6333 is HTTP, 6334 is gRPC)
-                .collectionName("documents")
-                .build();
+    public QdrantClient qdrantClient() {
+        var index = aiDocsProperties.getIndex();
+        return new QdrantClient(QdrantGrpcClient.newBuilder(index.getHost(), index.getPort(), false).build());
+    }
+
+    /**
+     * Provides the {@link TenantIndexes} that map every tenant to its own Qdrant collection, so that
+     * searches only scan the documents of a single tenant.
+     *
+     * @param qdrantClient   the client to manage the collections with
+     * @param embeddingModel the embedding model to compute embeddings for the documents with
+     * @return the tenant indexes
+     */
+    @Bean
+    public TenantIndexes tenantIndexes(QdrantClient qdrantClient, EmbeddingModel embeddingModel) {
+        return new TenantIndexes(qdrantClient, embeddingModel, aiDocsProperties);
+    }
+
+    /**
+     * Provides the {@link ChatSessions} holding the tenant each chat searches.
+     *
+     * @return the chat sessions
+     */
+    @Bean
+    public ChatSessions chatSessions() {
+        return new ChatSessions(aiDocsProperties.getIndex().getDefaultTenant());
+    }
+
+    /**
+     * Exposes the tenant collections as an actuator endpoint, allowing a single tenant to be re-indexed.
+     *
+     * @param tenantIndexes the tenant indexes
+     * @return the endpoint
+     */
+    @Bean
+    public TenantIndexEndpoint tenantIndexEndpoint(TenantIndexes tenantIndexes) {
+        return new TenantIndexEndpoint(tenantIndexes);
     }
 
     /**
@@ -67,22 +141,17 @@ public class AIConfig {
 
 
     /**
-     * An {@link ApplicationRunner} that imports documents from the specified location to the MongoDB store.
-     * The runner is configured to connect to a MongoDB instance using the provided {@link MongoClient},
-     * and uses database and collection names specified in the {@link MongoDbProperties}.
-     * An index is created on the collection for efficient querying.
-     * The runner also configures an {@link EmbeddingModel} using the base URL and model name specified in the
-     * {@link AIDocsProperties} for the OpenAI provider.
-     * The documents are loaded from the specified location using a {@link FileSystemDocumentLoader}.
-     * The documents are then ingested into the store using an {@link EmbeddingStoreIngestor}.
-     * The runner logs the number of documents imported to the store.
+     * An {@link ApplicationRunner} that imports documents from the specified location to the Qdrant store.
+     * Files directly in the location belong to the default tenant, every sub-directory is imported into
+     * the collection of the tenant named like the directory. Tenants with an up-to-date snapshot in
+     * {@code ai.docs.index.snapshot-location} are loaded from it instead of being embedded again.
+     * See {@link TenantIndexes}.
      *
-     * @param embeddingStore the MongoDB store to store the documents
-     * @param embeddingModel the embedding model to use for computing embeddings for the documents
+     * @param tenantIndexes the tenant indexes to import the documents into
      * @return an application runner that imports documents to the store
      */
     @Bean
-    public ApplicationRunner docImporter(EmbeddingStore<TextSegment> embeddingStore, EmbeddingModel embeddingModel) {
+    public ApplicationRunner docImporter(TenantIndexes tenantIndexes) {
         return args -> {
             var docsLocation = aiDocsProperties.getLocation();
             if (docsLocation == null || docsLocation.isEmpty()) {
@@ -91,17 +160,7 @@ public class AIConfig {
             }
 
             log.info("Importing documents from {}", docsLocation);
-            var docs = FileSystemDocumentLoader.loadDocuments(docsLocation);
-
-            EmbeddingStoreIngestor.builder()
-                    .embeddingModel(embeddingModel)
-                    .embeddingStore(embeddingStore)
-                    .build()
-                    .ingest(docs);
-
-            var response = embeddingModel.embed("test string");
-            log.info("Embedding dimension: {}", response.content().dimension());
-            log.info("Imported {} documents", docs.size());
+            tenantIndexes.reindexAll();
         };
     }
 
@@ -120,19 +179,81 @@ public class AIConfig {
     }
 
     /**
-     * Returns a {@link ContentRetriever} that retrieves content from the provided
-     * {@link EmbeddingStore} using the provided {@link EmbeddingModel}.
+     * Returns the {@link SpeculativeQueryRouter} that routes each query to the {@link ContentRetriever} of the
+     * chat's tenant, restricted by the chat's {@link RetrievalFilter}. If query expansion is enabled, each
+     * tenant's retriever is wrapped in an {@link ExpandingContentRetriever}. Questions can be prefetched
+     * while they are typed, see {@link SpeculativeQueryRouter#prefetch(String, String)}, unless expansion is
+     * enabled: its follow-up variants depend on the chat memory, which a prefetch does not have.
      *
-     * @param embeddingStore the embedding store to retrieve content from
+     * @param tenantIndexes  the tenant indexes to retrieve content from
      * @param embeddingModel the embedding model to use for retrieving content
-     * @return a content retriever
+     * @param chatSessions   the sessions holding the tenant and filter of each chat
+     * @param meterRegistry  the registry to report retrieval metrics to
+     * @return a query router
      */
     @Bean
-    public ContentRetriever contentRetriever(EmbeddingStore<TextSegment> embeddingStore, EmbeddingModel embeddingModel) {
-        return EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
+    public SpeculativeQueryRouter queryRouter(TenantIndexes tenantIndexes, EmbeddingModel embeddingModel,
+                                              ChatSessions chatSessions, MeterRegistry meterRegistry) {
+        var retrieval = aiDocsProperties.getRetrieval();
+        var expansion = retrieval.getExpansion();
+        var speculative = retrieval.getSpeculative();
+        var queryTransformer = expansionQueryTransformer();
+        var tenantRouter = new TenantQueryRouter(chatSessions, tenant -> {
+            ContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
+                    .embeddingStore(tenantIndexes.store(tenant))
+                    .embeddingModel(embeddingModel)
+                    .maxResults(retrieval.getMaxResults())
+                    .minScore(retrieval.getMinScore())
+                    .dynamicFilter(query -> chatSessions.filterOf(ChatSessions.chatIdOf(query)).toFilter())
+                    .build();
+            if (expansion.isEnabled()) {
+                retriever = new ExpandingContentRetriever(retriever, queryTransformer,
+                        expansion.getDeadline(), retrievalExecutor, meterRegistry);
+            }
+            return retriever;
+        });
+        int cacheSize = expansion.isEnabled() ? 0 : speculative.getCacheSize();
+        return new SpeculativeQueryRouter(tenantRouter, chatSessions, cacheSize, speculative.getMatchThreshold(),
+                meterRegistry);
+    }
+
+    /**
+     * Returns a {@link RetrievalAugmentor} that retrieves content through the given {@link QueryRouter} and
+     * packs it with a {@link ContextPackingAggregator} before it is injected into the prompt. Duplicate and
+     * adjacent chunks are collapsed and the context is capped at the token budget configured in
+     * {@link AIDocsProperties.Retrieval}.
+     *
+     * @param queryRouter   the query router to retrieve content through
+     * @param meterRegistry the registry to report context packing metrics to
+     * @return a retrieval augmentor
+     */
+    @Bean
+    public RetrievalAugmentor retrievalAugmentor(QueryRouter queryRouter, MeterRegistry meterRegistry) {
+        var retrieval = aiDocsProperties.getRetrieval();
+        return DefaultRetrievalAugmentor.builder()
+                .queryRouter(queryRouter)
+                .contentAggregator(new ContextPackingAggregator(retrieval.getContextTokenBudget(),
+                        retrieval.getDuplicateThreshold(), meterRegistry))
+                .build();
+    }
+
+    /**
+     * Returns the {@link QueryTransformer} generating query variants for expansion. Variants are derived by
+     * rules unless a small local model is configured, which is then asked to rephrase the question.
+     *
+     * @return the query transformer
+     */
+    private QueryTransformer expansionQueryTransformer() {
+        var expansion = aiDocsProperties.getRetrieval().getExpansion();
+        if (expansion.getModelName() == null || expansion.getModelName().isEmpty()) {
+            return new KeywordQueryTransformer(expansion.getVariants());
+        }
+        var model = OllamaChatModel.builder()
+                .baseUrl(aiDocsProperties.getLangchain4j().getOpenAi().getBaseUrl())
+                .modelName(expansion.getModelName())
+                .timeout(expansion.getDeadline())
                 .build();
+        return new ExpandingQueryTransformer(model, expansion.getVariants());
     }
 
     /**
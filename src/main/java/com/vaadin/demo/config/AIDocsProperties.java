@@ -2,11 +2,15 @@ package com.vaadin.demo.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+
 @ConfigurationProperties(prefix = "ai.docs")
 public class AIDocsProperties {
 
     private String location;
     private LangChain4j langchain4j;
+    private Retrieval retrieval = new Retrieval();
+    private Index index = new Index();
 
     public static class LangChain4j {
         private OpenAI openAi;
@@ -68,6 +72,171 @@ public class AIDocsProperties {
         }
     }
 
+    public static class Retrieval {
+        private int maxResults = 8;
+        private double minScore = 0.0;
+        private int contextTokenBudget = 1500;
+        private double duplicateThreshold = 0.85;
+        private Expansion expansion = new Expansion();
+        private Speculative speculative = new Speculative();
+
+        public static class Expansion {
+            private boolean enabled = false;
+            private int variants = 3;
+            private Duration deadline = Duration.ofMillis(300);
+            private String modelName;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getVariants() {
+                return variants;
+            }
+
+            public void setVariants(int variants) {
+                this.variants = variants;
+            }
+
+            public Duration getDeadline() {
+                return deadline;
+            }
+
+            public void setDeadline(Duration deadline) {
+                this.deadline = deadline;
+            }
+
+            public String getModelName() {
+                return modelName;
+            }
+
+            public void setModelName(String modelName) {
+                this.modelName = modelName;
+            }
+        }
+
+        public static class Speculative {
+            private int cacheSize = 4;
+            private double matchThreshold = 0.8;
+
+            public int getCacheSize() {
+                return cacheSize;
+            }
+
+            public void setCacheSize(int cacheSize) {
+                this.cacheSize = cacheSize;
+            }
+
+            public double getMatchThreshold() {
+                return matchThreshold;
+            }
+
+            public void setMatchThreshold(double matchThreshold) {
+                this.matchThreshold = matchThreshold;
+            }
+        }
+
+        public int getMaxResults() {
+            return maxResults;
+        }
+
+        public void setMaxResults(int maxResults) {
+            this.maxResults = maxResults;
+        }
+
+        public double getMinScore() {
+            return minScore;
+        }
+
+        public void setMinScore(double minScore) {
+            this.minScore = minScore;
+        }
+
+        public int getContextTokenBudget() {
+            return contextTokenBudget;
+        }
+
+        public void setContextTokenBudget(int contextTokenBudget) {
+            this.contextTokenBudget = contextTokenBudget;
+        }
+
+        public double getDuplicateThreshold() {
+            return duplicateThreshold;
+        }
+
+        public void setDuplicateThreshold(double duplicateThreshold) {
+            this.duplicateThreshold = duplicateThreshold;
+        }
+
+        public Speculative getSpeculative() {
+            return speculative;
+        }
+
+        public void setSpeculative(Speculative speculative) {
+            this.speculative = speculative;
+        }
+
+        public Expansion getExpansion() {
+            return expansion;
+        }
+
+        public void setExpansion(Expansion expansion) {
+            this.expansion = expansion;
+        }
+    }
+
+    public static class Index {
+        private String host = "qdrant-service";  // Kubernetes service name
+        private int port = 6334;                 // Qdrant gRPC port (6333 is HTTP, 6334 is gRPC)
+        private String collectionPrefix = "documents";
+        private String defaultTenant = "default";
+        private String snapshotLocation;
+
+        public String getHost() {
+            return host;
+        }
+
+        public void setHost(String host) {
+            this.host = host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+
+        public String getCollectionPrefix() {
+            return collectionPrefix;
+        }
+
+        public void setCollectionPrefix(String collectionPrefix) {
+            this.collectionPrefix = collectionPrefix;
+        }
+
+        public String getDefaultTenant() {
+            return defaultTenant;
+        }
+
+        public void setDefaultTenant(String defaultTenant) {
+            this.defaultTenant = defaultTenant;
+        }
+
+        public String getSnapshotLocation() {
+            return snapshotLocation;
+        }
+
+        public void setSnapshotLocation(String snapshotLocation) {
+            this.snapshotLocation = snapshotLocation;
+        }
+    }
+
     public LangChain4j getLangchain4j() {
         return langchain4j;
     }
@@ -83,4 +252,20 @@ public class AIDocsProperties {
     public void setLocation(String location) {
         this.location = location;
     }
+
+    public Retrieval getRetrieval() {
+        return retrieval;
+    }
+
+    public void setRetrieval(Retrieval retrieval) {
+        this.retrieval = retrieval;
+    }
+
+    public Index getIndex() {
+        return index;
+    }
+
+    public void setIndex(Index index) {
+        this.index = index;
+    }
 }
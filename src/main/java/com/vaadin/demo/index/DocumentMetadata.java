@@ -0,0 +1,124 @@
+package com.vaadin.demo.index;
+
+import dev.langchain4j.data.document.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Metadata keys the importer adds to every document, and from there to every segment stored in Qdrant.
+ * They are the fields retrieval can be filtered on.
+ */
+public final class DocumentMetadata {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentMetadata.class);
+
+    /** Path of the file relative to the tenant's document folder, using {@code /} as separator. */
+    public static final String RELATIVE_PATH = "relative_path";
+    /** Folder of the file relative to the tenant's document folder, {@link #ROOT_FOLDER} for the top level. */
+    public static final String FOLDER = "folder";
+    /**
+     * Prefix of the keys holding the ancestors of the file's folder: {@code folder_1} is its top-level folder,
+     * {@code folder_2} the first two levels and so on, up to {@link #MAX_FOLDER_DEPTH}. Qdrant payloads of
+     * langchain4j segments cannot hold lists, so each level gets a key of its own.
+     */
+    public static final String FOLDER_AT_DEPTH = "folder_";
+    public static final int MAX_FOLDER_DEPTH = 6;
+    /** The folder of files directly in the tenant's document folder. */
+    public static final String ROOT_FOLDER = "/";
+    /** Lower-case file extension without the dot. */
+    public static final String EXTENSION = "extension";
+    /** Last modification time of the file in epoch milliseconds. */
+    public static final String LAST_MODIFIED = "last_modified";
+    /** The closest heading above the segment, set by {@link HeadingAwareSplitter}. */
+    public static final String HEADING = "heading";
+
+    static final String FILE_NAME = "file_name";
+    static final String DIRECTORY = "absolute_directory_path";
+
+    private DocumentMetadata() {
+    }
+
+    /**
+     * Adds the path, extension and modification time of the file a document was loaded from to its metadata.
+     *
+     * @param document the document loaded by the file system document loader
+     * @param root     the document folder of the tenant the document belongs to
+     * @return the same document
+     */
+    public static Document enrich(Document document, Path root) {
+        var metadata = document.metadata();
+        var fileName = metadata.getString(FILE_NAME);
+        var directory = metadata.getString(DIRECTORY);
+        if (fileName == null || directory == null) {
+            return document;
+        }
+
+        var file = Path.of(directory, fileName);
+        metadata.put(RELATIVE_PATH, separatorsToSlash(root.toAbsolutePath().relativize(file)));
+        var folder = folderOf(root, file);
+        metadata.put(FOLDER, folder);
+        var ancestors = ancestorsOf(folder);
+        for (int depth = 1; depth <= Math.min(ancestors.size(), MAX_FOLDER_DEPTH); depth++) {
+            metadata.put(folderAtDepth(depth), ancestors.get(depth - 1));
+        }
+        metadata.put(EXTENSION, extensionOf(fileName));
+        try {
+            metadata.put(LAST_MODIFIED, Files.getLastModifiedTime(file).toMillis());
+        } catch (IOException e) {
+            log.warn("Could not read modification time of {}", file, e);
+        }
+        return document;
+    }
+
+    /**
+     * Returns the key holding the ancestor folder at the given depth, see {@link #FOLDER_AT_DEPTH}.
+     *
+     * @param depth the number of folder levels, starting at 1
+     * @return the metadata key
+     */
+    public static String folderAtDepth(int depth) {
+        return FOLDER_AT_DEPTH + depth;
+    }
+
+    /**
+     * Returns the given folder and all folders above it, the top-level folder first. For
+     * {@code guides/setup} these are {@code guides} and {@code guides/setup}.
+     *
+     * @param folder a folder as stored in {@link #FOLDER}
+     * @return the ancestors including the folder itself, empty for the {@link #ROOT_FOLDER}
+     */
+    public static List<String> ancestorsOf(String folder) {
+        if (folder.equals(ROOT_FOLDER)) {
+            return List.of();
+        }
+        var ancestors = new ArrayList<String>();
+        int slash = folder.indexOf('/');
+        while (slash >= 0) {
+            ancestors.add(folder.substring(0, slash));
+            slash = folder.indexOf('/', slash + 1);
+        }
+        ancestors.add(folder);
+        return ancestors;
+    }
+
+    static String folderOf(Path root, Path file) {
+        var parent = root.toAbsolutePath().relativize(file.toAbsolutePath()).getParent();
+        return parent == null ? ROOT_FOLDER : separatorsToSlash(parent);
+    }
+
+    static String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static String separatorsToSlash(Path path) {
+        return path.toString().replace('\\', '/');
+    }
+}
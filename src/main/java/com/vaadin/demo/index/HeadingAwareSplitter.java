@@ -0,0 +1,59 @@
+package com.vaadin.demo.index;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.List;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link DocumentSplitter} that splits with the given delegate and then records the closest Markdown
+ * heading above each segment as {@link DocumentMetadata#HEADING}.
+ */
+public class HeadingAwareSplitter implements DocumentSplitter {
+
+    private static final Pattern HEADING = Pattern.compile("(?m)^#{1,6}[ \\t]+(.+?)[ \\t#]*$");
+    private static final int PROBE_LENGTH = 40;
+
+    private final DocumentSplitter delegate;
+
+    public HeadingAwareSplitter(DocumentSplitter delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        var segments = delegate.split(document);
+        var text = document.text();
+        var headings = headings(text);
+        if (headings.isEmpty()) {
+            return segments;
+        }
+
+        int position = 0;
+        for (var segment : segments) {
+            // Segments appear in document order, so search forward from the previous one
+            var probe = segment.text().substring(0, Math.min(PROBE_LENGTH, segment.text().length()));
+            int found = text.indexOf(probe, position);
+            if (found >= 0) {
+                position = found;
+            }
+            var heading = headings.floorEntry(position);
+            if (heading != null) {
+                segment.metadata().put(DocumentMetadata.HEADING, heading.getValue());
+            }
+        }
+        return segments;
+    }
+
+    static TreeMap<Integer, String> headings(String text) {
+        var headings = new TreeMap<Integer, String>();
+        var matcher = HEADING.matcher(text);
+        while (matcher.find()) {
+            headings.put(matcher.start(), matcher.group(1).trim());
+        }
+        return headings;
+    }
+}
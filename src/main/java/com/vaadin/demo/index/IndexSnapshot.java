@@ -0,0 +1,415 @@
+package com.vaadin.demo.index;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary snapshot of the segments, embeddings and metadata of one collection, used to load a fresh store
+ * at disk speed instead of embedding the whole corpus again.
+ * <p>
+ * A snapshot starts with a {@link Header} that records the embedding model, the vector dimension and a
+ * fingerprint of the source documents. It is followed by chunks of up to {@value #CHUNK_RECORDS} records,
+ * each deflate-compressed on its own and stored with its record count, lengths and a CRC32 over these
+ * fields and the uncompressed bytes, so that chunks can be streamed and verified one at a time. A chunk
+ * with zero records marks the end of the snapshot.
+ * <p>
+ * Every length is checked against the limits below before anything is allocated, so a damaged snapshot
+ * always fails with an {@link IOException} and the caller can fall back to embedding the documents.
+ */
+public final class IndexSnapshot {
+
+    static final int MAGIC = 0x44434958; // "DCIX"
+    static final int VERSION = 2;
+    static final int CHUNK_RECORDS = 256;
+    static final int MAX_DIMENSION = 65_536;
+    static final int MAX_HEADER_STRING_BYTES = 4 * 1024;
+    // Text and metadata of one record, segments are a few KB at most
+    static final int MAX_SEGMENT_BYTES = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte STRING = 'S';
+    private static final byte UUID_VALUE = 'U';
+    private static final byte INTEGER = 'I';
+    private static final byte LONG = 'L';
+    private static final byte FLOAT = 'F';
+    private static final byte DOUBLE = 'D';
+
+    private IndexSnapshot() {
+    }
+
+    /**
+     * Describes what a snapshot was created from. A snapshot can only be loaded if its header equals the
+     * header of the current configuration and documents.
+     *
+     * @param embeddingModel the name of the embedding model that computed the vectors
+     * @param dimension      the dimension of the vectors
+     * @param fingerprint    a fingerprint of the source documents and how they were split
+     */
+    public record Header(String embeddingModel, int dimension, String fingerprint) {
+    }
+
+    /**
+     * The embeddings and segments of one chunk, in matching order.
+     */
+    public record Chunk(List<Embedding> embeddings, List<TextSegment> segments) {
+    }
+
+    /**
+     * Streams records into a snapshot, compressing and check-summing them chunk by chunk.
+     */
+    public static class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final int dimension;
+        private final ByteArrayOutputStream chunkBytes = new ByteArrayOutputStream();
+        private final DataOutputStream chunk = new DataOutputStream(chunkBytes);
+        private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        private final DataOutputStream record = new DataOutputStream(recordBytes);
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private int chunkRecords;
+        private long records;
+        private boolean closed;
+
+        public Writer(OutputStream out, Header header) throws IOException {
+            if (header.dimension() <= 0 || header.dimension() > MAX_DIMENSION) {
+                throw new IllegalArgumentException("Unsupported dimension " + header.dimension());
+            }
+            this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            this.dimension = header.dimension();
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            writeString(this.out, header.embeddingModel());
+            this.out.writeInt(header.dimension());
+            writeString(this.out, header.fingerprint());
+        }
+
+        public void write(List<Embedding> embeddings, List<TextSegment> segments) throws IOException {
+            for (int i = 0; i < embeddings.size(); i++) {
+                write(embeddings.get(i), segments.get(i));
+            }
+        }
+
+        public void write(Embedding embedding, TextSegment segment) throws IOException {
+            var vector = embedding.vector();
+            if (vector.length != dimension) {
+                throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.length);
+            }
+            recordBytes.reset();
+            writeString(record, segment.text());
+            writeMetadata(record, segment.metadata());
+            if (recordBytes.size() > MAX_SEGMENT_BYTES) {
+                throw new IllegalArgumentException("Segment of " + recordBytes.size() + " bytes exceeds the limit of "
+                        + MAX_SEGMENT_BYTES);
+            }
+            for (float value : vector) {
+                chunk.writeFloat(value);
+            }
+            recordBytes.writeTo(chunk);
+            chunkRecords++;
+            records++;
+            if (chunkRecords == CHUNK_RECORDS) {
+                flushChunk();
+            }
+        }
+
+        public long records() {
+            return records;
+        }
+
+        private void flushChunk() throws IOException {
+            if (chunkRecords == 0) {
+                return;
+            }
+            var raw = chunkBytes.toByteArray();
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            var compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+            var buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                compressed.write(buffer, 0, length);
+            }
+
+            out.writeInt(chunkRecords);
+            out.writeInt(raw.length);
+            out.writeInt(compressed.size());
+            out.writeLong(checksum(chunkRecords, raw.length, compressed.size(), raw));
+            compressed.writeTo(out);
+            chunkBytes.reset();
+            chunkRecords = 0;
+        }
+
+        /**
+         * Writes the last chunk and the end marker and closes the underlying stream.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                flushChunk();
+                out.writeInt(0);
+                out.writeLong(records);
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+
+        /**
+         * Closes the underlying stream without writing the last chunk or the end marker, for snapshots
+         * that are discarded anyway. Never throws, as it typically runs after a write already failed.
+         */
+        public void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            deflater.end();
+            try {
+                out.close();
+            } catch (IOException e) {
+                // The snapshot is incomplete either way and will be deleted
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot chunk by chunk, verifying the checksum of every chunk.
+     */
+    public static class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final Header header;
+        private final Inflater inflater = new Inflater();
+        private long records;
+        private boolean finished;
+
+        public Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+            if (this.in.readInt() != MAGIC) {
+                throw new IOException("Not an index snapshot");
+            }
+            int version = this.in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            var embeddingModel = readString(this.in, MAX_HEADER_STRING_BYTES);
+            int dimension = this.in.readInt();
+            if (dimension <= 0 || dimension > MAX_DIMENSION) {
+                throw new IOException("Invalid dimension " + dimension + " in snapshot");
+            }
+            this.header = new Header(embeddingModel, dimension, readString(this.in, MAX_HEADER_STRING_BYTES));
+        }
+
+        public Header header() {
+            return header;
+        }
+
+        /**
+         * Reads the next chunk.
+         *
+         * @return the next chunk, or {@code null} after the last one
+         * @throws IOException if the snapshot is truncated or a chunk fails its checksum
+         */
+        public Chunk next() throws IOException {
+            if (finished) {
+                return null;
+            }
+            try {
+                int count = in.readInt();
+                if (count == 0) {
+                    long expected = in.readLong();
+                    if (expected != records) {
+                        throw new IOException("Snapshot declares " + expected + " records but contains " + records);
+                    }
+                    finished = true;
+                    return null;
+                }
+                int rawLength = in.readInt();
+                int compressedLength = in.readInt();
+                long expectedCrc = in.readLong();
+                long maxRawLength = (long) CHUNK_RECORDS * (header.dimension() * Float.BYTES + MAX_SEGMENT_BYTES);
+                if (count < 0 || count > CHUNK_RECORDS || rawLength <= 0 || rawLength > maxRawLength
+                        || compressedLength <= 0 || compressedLength > maxCompressedLength(rawLength)) {
+                    throw new IOException("Invalid chunk header after record " + records + " (" + count + " records, "
+                            + rawLength + " bytes, " + compressedLength + " compressed)");
+                }
+                var raw = new byte[rawLength];
+                var compressed = new byte[compressedLength];
+                in.readFully(compressed);
+                inflate(compressed, raw);
+
+                if (checksum(count, rawLength, compressedLength, raw) != expectedCrc) {
+                    throw new IOException("Checksum mismatch in snapshot chunk after record " + records);
+                }
+                records += count;
+                return readChunk(new DataInputStream(new ByteArrayInputStream(raw)), count);
+            } catch (EOFException e) {
+                throw new IOException("Snapshot is truncated after record " + records, e);
+            }
+        }
+
+        private void inflate(byte[] compressed, byte[] raw) throws IOException {
+            inflater.reset();
+            inflater.setInput(compressed);
+            try {
+                int length = 0;
+                while (length < raw.length && !inflater.finished()) {
+                    int inflated = inflater.inflate(raw, length, raw.length - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += inflated;
+                }
+                if (length != raw.length) {
+                    throw new IOException("Snapshot chunk after record " + records + " is shorter than declared");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Snapshot chunk after record " + records + " is corrupt", e);
+            }
+        }
+
+        private Chunk readChunk(DataInputStream chunk, int count) throws IOException {
+            var embeddings = new ArrayList<Embedding>(count);
+            var segments = new ArrayList<TextSegment>(count);
+            for (int i = 0; i < count; i++) {
+                var vector = new float[header.dimension()];
+                for (int j = 0; j < vector.length; j++) {
+                    vector[j] = chunk.readFloat();
+                }
+                embeddings.add(Embedding.from(vector));
+                segments.add(TextSegment.from(readString(chunk, chunk.available()), readMetadata(chunk)));
+            }
+            return new Chunk(embeddings, segments);
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+    }
+
+    /**
+     * Checksums a chunk together with its header, so that a damaged count or length is detected as well.
+     */
+    private static long checksum(int count, int rawLength, int compressedLength, byte[] raw) {
+        var crc = new CRC32();
+        crc.update(ByteBuffer.allocate(3 * Integer.BYTES).putInt(count).putInt(rawLength).putInt(compressedLength)
+                .flip());
+        crc.update(raw);
+        return crc.getValue();
+    }
+
+    /**
+     * The worst case size of deflated data, as in zlib's {@code compressBound}.
+     */
+    private static long maxCompressedLength(long rawLength) {
+        return rawLength + (rawLength >> 12) + (rawLength >> 14) + (rawLength >> 25) + 13;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, int maxBytes) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxBytes) {
+            throw new IOException("Invalid string length " + length + " in snapshot");
+        }
+        var bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeMetadata(DataOutputStream out, Metadata metadata) throws IOException {
+        var entries = metadata.toMap();
+        out.writeInt(entries.size());
+        for (var entry : entries.entrySet()) {
+            writeString(out, entry.getKey());
+            var value = entry.getValue();
+            if (value instanceof String string) {
+                out.writeByte(STRING);
+                writeString(out, string);
+            } else if (value instanceof UUID uuid) {
+                out.writeByte(UUID_VALUE);
+                writeString(out, uuid.toString());
+            } else if (value instanceof Integer integer) {
+                out.writeByte(INTEGER);
+                out.writeInt(integer);
+            } else if (value instanceof Long longValue) {
+                out.writeByte(LONG);
+                out.writeLong(longValue);
+            } else if (value instanceof Float floatValue) {
+                out.writeByte(FLOAT);
+                out.writeFloat(floatValue);
+            } else if (value instanceof Double doubleValue) {
+                out.writeByte(DOUBLE);
+                out.writeDouble(doubleValue);
+            } else {
+                throw new IllegalArgumentException("Unsupported metadata value type: " + value.getClass());
+            }
+        }
+    }
+
+    private static Metadata readMetadata(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0 || size > in.available()) {
+            throw new IOException("Invalid metadata size " + size + " in snapshot");
+        }
+        var entries = new HashMap<String, Object>(size * 2);
+        for (int i = 0; i < size; i++) {
+            var key = readString(in, in.available());
+            byte type = in.readByte();
+            Object value = switch (type) {
+                case STRING -> readString(in, in.available());
+                case UUID_VALUE -> readUuid(in);
+                case INTEGER -> in.readInt();
+                case LONG -> in.readLong();
+                case FLOAT -> in.readFloat();
+                case DOUBLE -> in.readDouble();
+                default -> throw new IOException("Unknown metadata type '" + (char) type + "' in snapshot");
+            };
+            entries.put(key, value);
+        }
+        return Metadata.from(entries);
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        var value = readString(in, in.available());
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid UUID '" + value + "' in snapshot", e);
+        }
+    }
+}
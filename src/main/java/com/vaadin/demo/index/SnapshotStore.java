@@ -0,0 +1,136 @@
+package com.vaadin.demo.index;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps one {@link IndexSnapshot} per collection in a directory. Snapshots are written next to their final
+ * location and only moved into place once complete, so a crash during ingestion never leaves a partial
+ * snapshot behind.
+ */
+public class SnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+    private static final String SUFFIX = ".snapshot";
+
+    private final Path directory;
+
+    /**
+     * @param location the directory to keep snapshots in, snapshots are disabled if {@code null} or empty
+     */
+    public SnapshotStore(String location) {
+        this.directory = location == null || location.isEmpty() ? null : Path.of(location);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    Path fileOf(String collection) {
+        return directory.resolve(collection + SUFFIX);
+    }
+
+    /**
+     * Loads the snapshot of the given collection into the store if it was created from the same
+     * embedding model, dimension and documents as described by the expected header.
+     *
+     * @param collection the collection the snapshot was taken of
+     * @param expected   the header describing the current model and documents
+     * @param store      the (empty) store to load the snapshot into
+     * @return the number of segments loaded, or {@code -1} if there is no compatible snapshot
+     * @throws IOException if the snapshot is compatible but truncated or corrupt
+     */
+    public long restore(String collection, IndexSnapshot.Header expected, EmbeddingStore<TextSegment> store)
+            throws IOException {
+        if (!isEnabled() || !Files.isRegularFile(fileOf(collection))) {
+            return -1;
+        }
+        try (var in = Files.newInputStream(fileOf(collection)); var reader = new IndexSnapshot.Reader(in)) {
+            if (!reader.header().equals(expected)) {
+                log.info("Snapshot of '{}' does not match the current documents or model ({} vs {})",
+                        collection, reader.header(), expected);
+                return -1;
+            }
+            long segments = 0;
+            for (var chunk = reader.next(); chunk != null; chunk = reader.next()) {
+                store.addAll(chunk.embeddings(), chunk.segments());
+                segments += chunk.segments().size();
+            }
+            return segments;
+        }
+    }
+
+    /**
+     * Starts writing a new snapshot of the given collection. The snapshot replaces the current one when
+     * {@link Pending#commit()} is called and is discarded if the pending snapshot is closed without it.
+     *
+     * @param collection the collection the snapshot is taken of
+     * @param header     the header describing the model and documents
+     * @return the pending snapshot
+     * @throws IOException if the snapshot file cannot be created
+     */
+    public Pending create(String collection, IndexSnapshot.Header header) throws IOException {
+        Files.createDirectories(directory);
+        var temporary = Files.createTempFile(directory, collection, SUFFIX + ".tmp");
+        var out = Files.newOutputStream(temporary);
+        try {
+            return new Pending(temporary, fileOf(collection), new IndexSnapshot.Writer(out, header));
+        } catch (IOException e) {
+            out.close();
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * A snapshot being written.
+     */
+    public static class Pending implements AutoCloseable {
+
+        private final Path temporary;
+        private final Path target;
+        private final IndexSnapshot.Writer writer;
+        private boolean committed;
+
+        private Pending(Path temporary, Path target, IndexSnapshot.Writer writer) {
+            this.temporary = temporary;
+            this.target = target;
+            this.writer = writer;
+        }
+
+        public IndexSnapshot.Writer writer() {
+            return writer;
+        }
+
+        public void commit() throws IOException {
+            writer.close();
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            log.info("Wrote snapshot {} with {} segments", target, writer.records());
+        }
+
+        @Override
+        public void close() {
+            if (committed) {
+                return;
+            }
+            // Discarding must not flush: after a failed write (e.g. a full disk) that would only fail again
+            try {
+                writer.abort();
+            } finally {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    log.warn("Could not delete incomplete snapshot {}", temporary, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.vaadin.demo.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Actuator endpoint listing the tenant collections. A {@code POST /actuator/tenants/<tenant>} starts
+ * re-indexing a single tenant from its document folder in the background, and
+ * {@code GET /actuator/tenants/<tenant>} reports how that re-index is doing.
+ */
+@Endpoint(id = "tenants")
+public class TenantIndexEndpoint implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantIndexEndpoint.class);
+    private static final Set<String> PENDING = Set.of("queued", "running");
+
+    private final TenantIndexes tenantIndexes;
+    private final ExecutorService executor;
+    private final Map<String, Map<String, Object>> statuses = new ConcurrentHashMap<>();
+
+    public TenantIndexEndpoint(TenantIndexes tenantIndexes) {
+        this.tenantIndexes = tenantIndexes;
+        var threadFactory = new CustomizableThreadFactory("reindex-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    @ReadOperation
+    public Map<String, String> collections() {
+        var collections = new LinkedHashMap<String, String>();
+        tenantIndexes.tenants().forEach(tenant -> collections.put(tenant, tenantIndexes.collectionName(tenant)));
+        return collections;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status(@Selector String tenant) {
+        return statuses.getOrDefault(tenant, status(tenant, "idle"));
+    }
+
+    /**
+     * Queues a re-index of the given tenant unless one is already queued or running.
+     *
+     * @param tenant the tenant to re-index
+     * @return the status of the tenant's re-index
+     * @throws IllegalArgumentException if the tenant is unknown
+     */
+    @WriteOperation
+    public Map<String, Object> reindex(@Selector String tenant) {
+        if (!tenantIndexes.tenants().contains(tenant)) {
+            throw new IllegalArgumentException("Unknown tenant: " + tenant);
+        }
+        synchronized (statuses) {
+            var current = statuses.get(tenant);
+            if (current != null && PENDING.contains(current.get("status"))) {
+                return current;
+            }
+            var queued = status(tenant, "queued");
+            statuses.put(tenant, queued);
+            executor.execute(() -> run(tenant));
+            return queued;
+        }
+    }
+
+    private void run(String tenant) {
+        statuses.put(tenant, status(tenant, "running"));
+        try {
+            long segments = tenantIndexes.reindex(tenant);
+            var done = status(tenant, "done");
+            done.put("segments", segments);
+            statuses.put(tenant, done);
+        } catch (RuntimeException e) {
+            log.error("Re-indexing tenant '{}' failed", tenant, e);
+            var failed = status(tenant, "failed");
+            failed.put("error", String.valueOf(e.getMessage()));
+            statuses.put(tenant, failed);
+        }
+    }
+
+    private Map<String, Object> status(String tenant, String status) {
+        var result = new LinkedHashMap<String, Object>();
+        result.put("tenant", tenant);
+        result.put("collection", tenantIndexes.collectionName(tenant));
+        result.put("status", status);
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
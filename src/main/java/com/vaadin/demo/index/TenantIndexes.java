@@ -0,0 +1,516 @@
+package com.vaadin.demo.index;
+
+import com.vaadin.demo.config.AIDocsProperties;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.Collections.AliasDescription;
+import io.qdrant.client.grpc.Collections.AliasOperations;
+import io.qdrant.client.grpc.Collections.CreateAlias;
+import io.qdrant.client.grpc.Collections.DeleteAlias;
+import io.qdrant.client.grpc.Collections.Distance;
+import io.qdrant.client.grpc.Collections.PayloadSchemaType;
+import io.qdrant.client.grpc.Collections.VectorParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Keeps one Qdrant collection per tenant.
+ * <p>
+ * Documents directly inside {@code ai.docs.location} belong to the default tenant and are stored in the
+ * collection named by the collection prefix. Every sub-directory {@code ai.docs.location/<tenant>} is a
+ * tenant of its own, stored in {@code <prefix>-<tenant>}. Searches of a tenant therefore only scan that
+ * tenant's vectors, and a tenant can be re-indexed without touching the collections of the others.
+ * <p>
+ * These names are Qdrant aliases. A re-index fills a new collection {@code <name>_v<timestamp>_<version>}
+ * and then points the alias at it in one atomic alias update, so chats keep searching the previous index
+ * until the new one is complete. The version identifies the embedding model and documents the collection
+ * was built from, which lets replicas sharing a Qdrant skip tenants another replica has already indexed.
+ * <p>
+ * Segments carry the {@link DocumentMetadata} of their file, and the filterable fields are backed by
+ * Qdrant payload indexes. With {@code ai.docs.index.snapshot-location} set, every import is also written to an
+ * {@link IndexSnapshot}, from which an empty replica can later be filled without calling the embedding model.
+ */
+public class TenantIndexes {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantIndexes.class);
+    private static final int MAX_SEGMENT_CHARS = 1200;
+    private static final int MAX_OVERLAP_CHARS = 120;
+    private static final int EMBEDDING_BATCH_SIZE = 64;
+    // Not produced by collectionName(), where '_' is always followed by two hex digits
+    private static final String VERSION_SEPARATOR = "_v";
+    // Collections being filled by other replicas must survive, and a re-embed can take hours on CPU
+    private static final Duration ABANDONED_AFTER = Duration.ofHours(24);
+
+    private final QdrantClient client;
+    private final EmbeddingModel embeddingModel;
+    private final String location;
+    private final AIDocsProperties.Index index;
+    private final String embeddingModelName;
+    private final SnapshotStore snapshots;
+    private final Map<String, EmbeddingStore<TextSegment>> stores = new ConcurrentHashMap<>();
+    private final Map<String, Object> reindexLocks = new ConcurrentHashMap<>();
+    private volatile Integer dimension;
+
+    public TenantIndexes(QdrantClient client, EmbeddingModel embeddingModel, AIDocsProperties aiDocsProperties) {
+        this.client = client;
+        this.embeddingModel = embeddingModel;
+        this.location = aiDocsProperties.getLocation();
+        this.index = aiDocsProperties.getIndex();
+        var langchain4j = aiDocsProperties.getLangchain4j();
+        var openAi = langchain4j == null ? null : langchain4j.getOpenAi();
+        this.embeddingModelName = openAi == null ? "" : Objects.toString(openAi.getEmbeddingModelName(), "");
+        this.snapshots = new SnapshotStore(index.getSnapshotLocation());
+    }
+
+    public String defaultTenant() {
+        return index.getDefaultTenant();
+    }
+
+    /**
+     * Returns the known tenants, the default tenant first followed by the sub-directories of the
+     * document location in alphabetical order.
+     *
+     * @return the names of all tenants
+     */
+    public List<String> tenants() {
+        var tenants = new ArrayList<String>();
+        tenants.add(defaultTenant());
+        if (location == null || location.isEmpty() || !Files.isDirectory(Path.of(location))) {
+            return tenants;
+        }
+        try (Stream<Path> children = Files.list(Path.of(location))) {
+            children.filter(Files::isDirectory)
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> !name.startsWith(".") && !name.equals(defaultTenant()))
+                    .sorted()
+                    .forEach(tenants::add);
+        } catch (IOException e) {
+            log.warn("Could not list tenants in {}", location, e);
+        }
+        return tenants;
+    }
+
+    /**
+     * Returns the name of the Qdrant collection holding the documents of the given tenant. ASCII letters,
+     * digits and {@code -} of the tenant name are kept, every other byte of its UTF-8 encoding is written
+     * as {@code _} followed by two hex digits, so that distinct tenants never share a collection.
+     *
+     * @param tenant the tenant
+     * @return the collection name
+     */
+    public String collectionName(String tenant) {
+        if (tenant.equals(defaultTenant())) {
+            return index.getCollectionPrefix();
+        }
+        var name = new StringBuilder(index.getCollectionPrefix()).append('-');
+        for (byte b : tenant.getBytes(StandardCharsets.UTF_8)) {
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '-') {
+                name.append((char) b);
+            } else {
+                name.append('_').append(HexFormat.of().toHexDigits(b));
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Returns the {@link EmbeddingStore} of the given tenant.
+     *
+     * @param tenant the tenant
+     * @return the embedding store backed by the tenant's own collection
+     */
+    public EmbeddingStore<TextSegment> store(String tenant) {
+        return stores.computeIfAbsent(tenant, t -> storeOf(collectionName(t)));
+    }
+
+    private EmbeddingStore<TextSegment> storeOf(String collection) {
+        return QdrantEmbeddingStore.builder()
+                .client(client)
+                .collectionName(collection)
+                .build();
+    }
+
+    /**
+     * Re-indexes all tenants one after another, skipping tenants whose collection was already built from
+     * the current embedding model and documents, e.g. by another replica.
+     */
+    public void reindexAll() {
+        for (var tenant : tenants()) {
+            reindex(tenant, false);
+        }
+    }
+
+    /**
+     * Fills a new collection for the given tenant and switches the tenant's alias to it, then drops the
+     * previous collection. Chats keep searching the previous collection while this runs, and collections
+     * of other tenants are left untouched. Unlike {@link #reindexAll()}, this always rebuilds the collection.
+     * <p>
+     * If snapshots are enabled and the tenant's snapshot was taken with the current embedding model from
+     * the current documents, the collection is bulk-loaded from it. Otherwise the documents are embedded
+     * and a new snapshot is written along the way.
+     *
+     * @param tenant the tenant to re-index
+     * @return the number of segments stored
+     * @throws IllegalArgumentException if the tenant is unknown
+     */
+    public long reindex(String tenant) {
+        return reindex(tenant, true);
+    }
+
+    private long reindex(String tenant, boolean force) {
+        if (!tenants().contains(tenant)) {
+            throw new IllegalArgumentException("Unknown tenant: " + tenant);
+        }
+        synchronized (reindexLocks.computeIfAbsent(tenant, t -> new Object())) {
+            var alias = collectionName(tenant);
+            var header = new IndexSnapshot.Header(embeddingModelName, dimension(), fingerprint(tenant));
+            var version = versionOf(header);
+            var current = aliasTarget(alias);
+            if (!force && current != null && current.startsWith(alias + VERSION_SEPARATOR)
+                    && current.endsWith("_" + version)) {
+                long segments = await(client.countAsync(current));
+                log.info("Collection '{}' of tenant '{}' is up to date ({} segments)", current, tenant, segments);
+                return segments;
+            }
+
+            var collection = alias + VERSION_SEPARATOR + System.currentTimeMillis() + "_" + version;
+            log.info("Re-indexing tenant '{}' into collection '{}'", tenant, collection);
+            dropAbandonedCollections(alias, current);
+            createCollection(collection);
+
+            long segments;
+            try {
+                segments = fill(tenant, alias, collection, header);
+            } catch (RuntimeException e) {
+                dropQuietly(collection);
+                throw e;
+            }
+            switchAlias(alias, collection);
+            return segments;
+        }
+    }
+
+    /**
+     * Returns a short hash of the header, identifying the embedding model and documents a collection was
+     * built from.
+     */
+    private static String versionOf(IndexSnapshot.Header header) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(
+                    (header.embeddingModel() + "\0" + header.dimension() + "\0" + header.fingerprint())
+                            .getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long fill(String tenant, String alias, String collection, IndexSnapshot.Header header) {
+        try {
+            long restored = snapshots.restore(alias, header, storeOf(collection));
+            if (restored >= 0) {
+                log.info("Loaded {} segments for tenant '{}' from snapshot", restored, tenant);
+                return restored;
+            }
+        } catch (IOException e) {
+            log.warn("Snapshot of '{}' is unusable, embedding the documents again", alias, e);
+            await(client.deleteCollectionAsync(collection));
+            createCollection(collection);
+        }
+        return ingest(tenant, alias, collection, header);
+    }
+
+    private long ingest(String tenant, String alias, String collection, IndexSnapshot.Header header) {
+        var docs = loadDocuments(tenant);
+        var root = root(tenant);
+        docs.forEach(document -> DocumentMetadata.enrich(document, root));
+        var segments = new HeadingAwareSplitter(DocumentSplitters.recursive(MAX_SEGMENT_CHARS, MAX_OVERLAP_CHARS))
+                .splitAll(docs);
+
+        var store = storeOf(collection);
+        var snapshot = createSnapshot(alias, header);
+        try {
+            for (int from = 0; from < segments.size(); from += EMBEDDING_BATCH_SIZE) {
+                var batch = segments.subList(from, Math.min(from + EMBEDDING_BATCH_SIZE, segments.size()));
+                var embeddings = embeddingModel.embedAll(batch).content();
+                store.addAll(embeddings, batch);
+                snapshot = writeSnapshot(snapshot, embeddings, batch);
+            }
+            commitSnapshot(snapshot);
+        } finally {
+            // A no-op once committed, otherwise deletes the partial snapshot when embedding or storing fails
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+
+        log.info("Imported {} documents ({} segments) for tenant '{}'", docs.size(), segments.size(), tenant);
+        return segments.size();
+    }
+
+    /**
+     * Starts the snapshot of an import. A snapshot that cannot be written only costs the next cold start,
+     * so snapshot errors are logged and never fail the import.
+     */
+    private SnapshotStore.Pending createSnapshot(String collection, IndexSnapshot.Header header) {
+        if (!snapshots.isEnabled()) {
+            return null;
+        }
+        try {
+            return snapshots.create(collection, header);
+        } catch (IOException e) {
+            log.warn("Could not create snapshot of '{}'", collection, e);
+            return null;
+        }
+    }
+
+    private SnapshotStore.Pending writeSnapshot(SnapshotStore.Pending snapshot, List<Embedding> embeddings,
+                                                List<TextSegment> segments) {
+        if (snapshot == null) {
+            return null;
+        }
+        try {
+            snapshot.writer().write(embeddings, segments);
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not write snapshot, continuing without it", e);
+            snapshot.close();
+            return null;
+        }
+    }
+
+    private void commitSnapshot(SnapshotStore.Pending snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            snapshot.commit();
+        } catch (IOException e) {
+            log.warn("Could not write snapshot", e);
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Fingerprints the files of the given tenant by path, size and modification time, together with the
+     * splitter settings. Any change means the tenant's snapshot is stale.
+     */
+    String fingerprint(String tenant) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            var splitter = "split:" + MAX_SEGMENT_CHARS + "/" + MAX_OVERLAP_CHARS
+                    + " folders:" + DocumentMetadata.MAX_FOLDER_DEPTH + "\n";
+            digest.update(splitter.getBytes(StandardCharsets.UTF_8));
+            for (var file : files(tenant).stream().sorted().toList()) {
+                var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                var entry = root(tenant).toAbsolutePath().relativize(file.toAbsolutePath()) + "\0" + attributes.size() + "\0"
+                        + attributes.lastModifiedTime().toMillis() + "\n";
+                digest.update(entry.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the folders of the given tenant's documents and the folders above them, relative to the
+     * tenant's document folder, as stored in {@link DocumentMetadata#FOLDER}. The top level is left out,
+     * as filtering on it would include every document.
+     *
+     * @param tenant the tenant
+     * @return the sorted folder names
+     */
+    public List<String> folders(String tenant) {
+        return files(tenant).stream()
+                .map(file -> DocumentMetadata.folderOf(root(tenant), file))
+                .flatMap(folder -> DocumentMetadata.ancestorsOf(folder).stream())
+                .distinct()
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Returns the file extensions of the given tenant's documents, as stored in {@link DocumentMetadata#EXTENSION}.
+     *
+     * @param tenant the tenant
+     * @return the sorted extensions
+     */
+    public List<String> extensions(String tenant) {
+        return files(tenant).stream()
+                .map(file -> DocumentMetadata.extensionOf(file.getFileName().toString()))
+                .filter(extension -> !extension.isEmpty())
+                .distinct()
+                .sorted()
+                .toList();
+    }
+
+    private List<Path> files(String tenant) {
+        if (location == null || location.isEmpty() || !Files.isDirectory(root(tenant))) {
+            return List.of();
+        }
+        int depth = tenant.equals(defaultTenant()) ? 1 : Integer.MAX_VALUE;
+        try (Stream<Path> files = Files.walk(root(tenant), depth)) {
+            return files.filter(Files::isRegularFile).toList();
+        } catch (IOException e) {
+            log.warn("Could not list documents of tenant '{}'", tenant, e);
+            return List.of();
+        }
+    }
+
+    private Path root(String tenant) {
+        if (tenant.equals(defaultTenant())) {
+            return Path.of(location);
+        }
+        return Path.of(location, tenant);
+    }
+
+    private List<Document> loadDocuments(String tenant) {
+        if (tenant.equals(defaultTenant())) {
+            // Sub-directories are tenants of their own, so only load the top level here
+            return FileSystemDocumentLoader.loadDocuments(root(tenant));
+        }
+        return FileSystemDocumentLoader.loadDocumentsRecursively(root(tenant));
+    }
+
+    private void createCollection(String collection) {
+        await(client.createCollectionAsync(collection, VectorParams.newBuilder()
+                .setSize(dimension())
+                .setDistance(Distance.Cosine)
+                .build()));
+
+        // Payload indexes let Qdrant apply metadata filters while searching instead of afterwards
+        createPayloadIndex(collection, DocumentMetadata.FOLDER, PayloadSchemaType.Keyword);
+        for (int depth = 1; depth <= DocumentMetadata.MAX_FOLDER_DEPTH; depth++) {
+            createPayloadIndex(collection, DocumentMetadata.folderAtDepth(depth), PayloadSchemaType.Keyword);
+        }
+        createPayloadIndex(collection, DocumentMetadata.EXTENSION, PayloadSchemaType.Keyword);
+        createPayloadIndex(collection, DocumentMetadata.LAST_MODIFIED, PayloadSchemaType.Integer);
+    }
+
+    /**
+     * Points the alias at the given collection in a single atomic alias update and drops the collection it
+     * pointed at before.
+     */
+    private void switchAlias(String alias, String collection) {
+        var previous = aliasTarget(alias);
+        var operations = new ArrayList<AliasOperations>();
+        if (previous != null) {
+            operations.add(AliasOperations.newBuilder()
+                    .setDeleteAlias(DeleteAlias.newBuilder().setAliasName(alias))
+                    .build());
+        } else if (await(client.collectionExistsAsync(alias))) {
+            // Indexes of earlier versions are plain collections named like the alias, which has to replace them
+            await(client.deleteCollectionAsync(alias));
+        }
+        operations.add(AliasOperations.newBuilder()
+                .setCreateAlias(CreateAlias.newBuilder().setAliasName(alias).setCollectionName(collection))
+                .build());
+        await(client.updateAliasesAsync(operations));
+        log.info("Collection '{}' now serves '{}'", collection, alias);
+
+        if (previous != null && !previous.equals(collection)) {
+            // Another replica may have replaced and dropped it already
+            dropQuietly(previous);
+        }
+    }
+
+    private String aliasTarget(String alias) {
+        return await(client.listAliasesAsync()).stream()
+                .filter(description -> description.getAliasName().equals(alias))
+                .map(AliasDescription::getCollectionName)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Drops collections of the alias left behind by re-indexes that did not complete, e.g. because the
+     * application was stopped. Collections younger than {@link #ABANDONED_AFTER} are kept, as another
+     * replica may still be filling them.
+     */
+    private void dropAbandonedCollections(String alias, String current) {
+        var prefix = alias + VERSION_SEPARATOR;
+        long cutoff = System.currentTimeMillis() - ABANDONED_AFTER.toMillis();
+        for (var collection : await(client.listCollectionsAsync())) {
+            if (collection.startsWith(prefix) && !collection.equals(current)
+                    && createdAt(collection.substring(prefix.length())) < cutoff) {
+                log.info("Dropping abandoned collection '{}'", collection);
+                dropQuietly(collection);
+            }
+        }
+    }
+
+    /**
+     * Parses the creation time from the {@code <timestamp>_<version>} part of a collection name.
+     *
+     * @return the creation time in epoch milliseconds, or {@link Long#MAX_VALUE} if the name has no timestamp
+     */
+    private static long createdAt(String suffix) {
+        int end = suffix.indexOf('_');
+        try {
+            return Long.parseLong(end < 0 ? suffix : suffix.substring(0, end));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private void dropQuietly(String collection) {
+        try {
+            await(client.deleteCollectionAsync(collection));
+        } catch (RuntimeException e) {
+            log.warn("Could not drop collection '{}'", collection, e);
+        }
+    }
+
+    private void createPayloadIndex(String collection, String field, PayloadSchemaType type) {
+        await(client.createPayloadIndexAsync(collection, field, type, null, true, null, null));
+    }
+
+    private int dimension() {
+        if (dimension == null) {
+            dimension = embeddingModel.embed("test string").content().dimension();
+            log.info("Embedding dimension: {}", dimension);
+        }
+        return dimension;
+    }
+
+    static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for Qdrant", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Qdrant request failed", e.getCause());
+        }
+    }
+}
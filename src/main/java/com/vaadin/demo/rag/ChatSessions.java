@@ -0,0 +1,75 @@
+package com.vaadin.demo.rag;
+
+import dev.langchain4j.rag.query.Query;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the retrieval settings of each chat, keyed by the chat memory ID that {@link com.vaadin.demo.AiAssistant}
+ * is called with. Retrieval components look the settings up from the query metadata.
+ */
+public class ChatSessions {
+
+    private final String defaultTenant;
+    private final Map<String, String> tenants = new ConcurrentHashMap<>();
+    private final Map<String, RetrievalFilter> filters = new ConcurrentHashMap<>();
+
+    public ChatSessions(String defaultTenant) {
+        this.defaultTenant = defaultTenant;
+    }
+
+    /**
+     * Returns the chat memory ID a query was made in.
+     *
+     * @param query the query
+     * @return the chat ID, or {@code null} if the query carries no metadata
+     */
+    public static Object chatIdOf(Query query) {
+        return query.metadata() == null ? null : query.metadata().chatMemoryId();
+    }
+
+    /**
+     * Returns the tenant whose index the given chat searches.
+     *
+     * @param chatId the chat ID, may be {@code null}
+     * @return the tenant of the chat, or the default tenant if none was set
+     */
+    public String tenantOf(Object chatId) {
+        if (chatId == null) {
+            return defaultTenant;
+        }
+        return tenants.getOrDefault(chatId.toString(), defaultTenant);
+    }
+
+    public void setTenant(String chatId, String tenant) {
+        tenants.put(chatId, tenant);
+    }
+
+    /**
+     * Returns the metadata filter the given chat restricts retrieval with.
+     *
+     * @param chatId the chat ID, may be {@code null}
+     * @return the filter of the chat, or {@link RetrievalFilter#NONE} if none was set
+     */
+    public RetrievalFilter filterOf(Object chatId) {
+        if (chatId == null) {
+            return RetrievalFilter.NONE;
+        }
+        return filters.getOrDefault(chatId.toString(), RetrievalFilter.NONE);
+    }
+
+    public void setFilter(String chatId, RetrievalFilter filter) {
+        filters.put(chatId, filter);
+    }
+
+    /**
+     * Forgets everything stored for the given chat.
+     *
+     * @param chatId the chat ID
+     */
+    public void end(String chatId) {
+        tenants.remove(chatId);
+        filters.remove(chatId);
+    }
+}
@@ -0,0 +1,318 @@
+package com.vaadin.demo.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A {@link ContentAggregator} that packs retrieved segments into a compact prompt context.
+ * <p>
+ * Segments are ranked by their retrieval score, near-duplicates (overlapping chunks that repeat
+ * most of their text) are dropped and the rest is taken in score order while it fits a fixed token
+ * budget. Selected chunks that directly follow each other in the same source document are merged into
+ * one, and the text they repeated as overlap goes back to the budget. Token counts before and after
+ * packing are recorded in the given {@link MeterRegistry}, since prompt length dominates the time to
+ * first token on CPU-bound models.
+ */
+public class ContextPackingAggregator implements ContentAggregator {
+
+    static final String INDEX_KEY = "index";
+    static final String FILE_NAME_KEY = "file_name";
+    static final String DIRECTORY_KEY = "absolute_directory_path";
+
+    private static final int SHINGLE_SIZE = 3;
+    private static final int MIN_OVERLAP_CHARS = 16;
+    private static final int MAX_OVERLAP_CHARS = 1000;
+
+    private final int tokenBudget;
+    private final double duplicateThreshold;
+
+    private final DistributionSummary retrievedTokens;
+    private final DistributionSummary packedTokens;
+    private final Counter savedTokens;
+    private final Counter duplicateSegments;
+    private final Counter mergedSegments;
+    private final Counter overBudgetSegments;
+    private final Timer packingTimer;
+
+    /**
+     * @param tokenBudget        the maximum number of (estimated) tokens the packed context may use
+     * @param duplicateThreshold the word-shingle Jaccard similarity above which a segment counts as a duplicate
+     * @param meterRegistry      the registry the packing metrics are reported to
+     */
+    public ContextPackingAggregator(int tokenBudget, double duplicateThreshold, MeterRegistry meterRegistry) {
+        this.tokenBudget = tokenBudget;
+        this.duplicateThreshold = duplicateThreshold;
+        this.retrievedTokens = DistributionSummary.builder("rag.context.tokens")
+                .description("Estimated prompt tokens of the retrieved context")
+                .tag("stage", "retrieved")
+                .register(meterRegistry);
+        this.packedTokens = DistributionSummary.builder("rag.context.tokens")
+                .description("Estimated prompt tokens of the retrieved context")
+                .tag("stage", "packed")
+                .register(meterRegistry);
+        this.savedTokens = Counter.builder("rag.context.tokens.saved")
+                .description("Estimated prompt tokens removed by context packing")
+                .register(meterRegistry);
+        this.duplicateSegments = segmentCounter(meterRegistry, "duplicate");
+        this.mergedSegments = segmentCounter(meterRegistry, "merged");
+        this.overBudgetSegments = segmentCounter(meterRegistry, "over_budget");
+        this.packingTimer = Timer.builder("rag.context.packing")
+                .description("Time spent packing retrieved segments into the prompt context")
+                .register(meterRegistry);
+    }
+
+    private static Counter segmentCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("rag.context.segments.removed")
+                .description("Retrieved segments removed from the prompt context")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<Content> aggregate(Map<Query, Collection<List<Content>>> queryToContents) {
+        return packingTimer.record(() -> pack(queryToContents));
+    }
+
+    private List<Content> pack(Map<Query, Collection<List<Content>>> queryToContents) {
+        var candidates = collect(queryToContents);
+        int tokensBefore = candidates.stream().mapToInt(c -> estimateTokens(c.text)).sum();
+
+        var distinct = removeDuplicates(candidates);
+        var packed = fitToBudget(distinct);
+
+        int tokensAfter = packed.stream().mapToInt(c -> estimateTokens(c.text)).sum();
+        retrievedTokens.record(tokensBefore);
+        packedTokens.record(tokensAfter);
+        savedTokens.increment(Math.max(0, tokensBefore - tokensAfter));
+
+        return packed.stream()
+                .map(c -> Content.from(TextSegment.from(c.text, c.metadata), Map.of(ContentMetadata.SCORE, c.score)))
+                .toList();
+    }
+
+    /**
+     * Flattens the results of all queries, keeping the best score of segments returned more than once.
+     */
+    private List<Candidate> collect(Map<Query, Collection<List<Content>>> queryToContents) {
+        var byText = new LinkedHashMap<String, Candidate>();
+        queryToContents.values().stream()
+                .flatMap(Collection::stream)
+                .forEach(contents -> {
+                    for (int rank = 0; rank < contents.size(); rank++) {
+                        var content = contents.get(rank);
+                        var segment = content.textSegment();
+                        var score = scoreOf(content, rank, contents.size());
+                        byText.merge(segment.text(), new Candidate(segment.text(), segment.metadata(), score),
+                                (a, b) -> a.score >= b.score ? a : b);
+                    }
+                });
+        var candidates = new ArrayList<>(byText.values());
+        candidates.sort(Comparator.comparingDouble((Candidate c) -> c.score).reversed());
+        return candidates;
+    }
+
+    private static double scoreOf(Content content, int rank, int size) {
+        var score = content.metadata().get(ContentMetadata.SCORE);
+        if (score instanceof Number number) {
+            return number.doubleValue();
+        }
+        // No score reported, fall back to the retriever's ordering
+        return 1.0 - (double) rank / size;
+    }
+
+    private List<Candidate> removeDuplicates(List<Candidate> candidates) {
+        var kept = new ArrayList<Candidate>();
+        var keptShingles = new ArrayList<Set<String>>();
+        for (var candidate : candidates) {
+            var shingles = shingles(candidate.text);
+            boolean duplicate = keptShingles.stream()
+                    .anyMatch(other -> jaccard(shingles, other) >= duplicateThreshold);
+            if (duplicate) {
+                duplicateSegments.increment();
+            } else {
+                kept.add(candidate);
+                keptShingles.add(shingles);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Selects segments in score order while they fit the token budget. A segment that directly follows
+     * or precedes an already selected chunk of the same source document is joined to it, and only the
+     * tokens it adds beyond the overlap the splitter repeated are charged against the budget. A merged
+     * chunk keeps the best score of its parts, but it only competes for the budget part by part.
+     */
+    private List<Candidate> fitToBudget(List<Candidate> candidates) {
+        var packed = new ArrayList<Candidate>();
+        int remaining = tokenBudget;
+        for (var candidate : candidates) {
+            var before = adjacent(packed, candidate, true);
+            var after = adjacent(packed, candidate, false);
+            var merged = before == null ? candidate : before.append(candidate);
+            if (after != null) {
+                merged = merged.append(after);
+            }
+            int tokens = estimateTokens(merged.text) - tokensOf(before) - tokensOf(after);
+            if (tokens <= remaining) {
+                // The merged chunk takes the place of the best ranked part it replaces
+                int position = packed.size();
+                for (var part : new Candidate[] {before, after}) {
+                    if (part != null) {
+                        position = Math.min(position, packed.indexOf(part));
+                        packed.remove(part);
+                        mergedSegments.increment();
+                    }
+                }
+                packed.add(position, merged);
+                remaining -= tokens;
+            } else if (packed.isEmpty() && remaining > 0) {
+                // Never return an empty context just because the best segment is too long
+                packed.add(candidate.truncate(remaining));
+                remaining = 0;
+            } else {
+                overBudgetSegments.increment();
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Returns the selected chunk of the same source document that ends right before the given
+     * candidate, or starts right after it, or {@code null} if there is none.
+     */
+    private static Candidate adjacent(List<Candidate> packed, Candidate candidate, boolean before) {
+        var source = sourceOf(candidate.metadata);
+        if (source == null || candidate.index < 0) {
+            return null;
+        }
+        for (var chunk : packed) {
+            boolean follows = before ? chunk.lastIndex + 1 == candidate.index : candidate.lastIndex + 1 == chunk.index;
+            if (follows && chunk.index >= 0 && source.equals(sourceOf(chunk.metadata))) {
+                return chunk;
+            }
+        }
+        return null;
+    }
+
+    private static int tokensOf(Candidate candidate) {
+        return candidate == null ? 0 : estimateTokens(candidate.text);
+    }
+
+    /**
+     * Estimates the number of tokens of the given text. Roughly four characters per token holds well
+     * enough for English prose with the tokenizers of the models we run.
+     */
+    static int estimateTokens(String text) {
+        return (text.length() + 3) / 4;
+    }
+
+    static Set<String> shingles(String text) {
+        var words = text.toLowerCase(Locale.ROOT).split("\\W+");
+        var shingles = new HashSet<String>();
+        if (words.length < SHINGLE_SIZE) {
+            shingles.add(String.join(" ", words));
+            return shingles;
+        }
+        for (int i = 0; i + SHINGLE_SIZE <= words.length; i++) {
+            shingles.add(String.join(" ", Arrays.copyOfRange(words, i, i + SHINGLE_SIZE)));
+        }
+        return shingles;
+    }
+
+    static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1.0;
+        }
+        int intersection = 0;
+        for (var shingle : a) {
+            if (b.contains(shingle)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+
+    /**
+     * Joins two consecutive chunks, removing the longest suffix of the first that the second repeats.
+     */
+    static String joinOverlapping(String first, String second) {
+        int max = Math.min(MAX_OVERLAP_CHARS, Math.min(first.length(), second.length()));
+        for (int overlap = max; overlap >= MIN_OVERLAP_CHARS; overlap--) {
+            if (first.regionMatches(first.length() - overlap, second, 0, overlap)) {
+                return first + second.substring(overlap);
+            }
+        }
+        return first + "\n" + second;
+    }
+
+    private static String sourceOf(Metadata metadata) {
+        var fileName = metadata.getString(FILE_NAME_KEY);
+        if (fileName == null) {
+            return null;
+        }
+        return Objects.toString(metadata.getString(DIRECTORY_KEY), "") + "/" + fileName;
+    }
+
+    private static int indexOf(Metadata metadata) {
+        var index = metadata.toMap().get(INDEX_KEY);
+        if (index == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(index.toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Candidate {
+        private final String text;
+        private final Metadata metadata;
+        private final double score;
+        private final int index;
+        private final int lastIndex;
+
+        Candidate(String text, Metadata metadata, double score) {
+            this(text, metadata, score, indexOf(metadata), indexOf(metadata));
+        }
+
+        private Candidate(String text, Metadata metadata, double score, int index, int lastIndex) {
+            this.text = text;
+            this.metadata = metadata;
+            this.score = score;
+            this.index = index;
+            this.lastIndex = lastIndex;
+        }
+
+        Candidate append(Candidate next) {
+            return new Candidate(joinOverlapping(text, next.text), metadata, Math.max(score, next.score),
+                    index, next.lastIndex);
+        }
+
+        Candidate truncate(int tokens) {
+            var chars = Math.min(text.length(), tokens * 4);
+            return new Candidate(text.substring(0, chars), metadata, score, index, lastIndex);
+        }
+    }
+}
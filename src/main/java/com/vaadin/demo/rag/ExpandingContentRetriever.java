@@ -0,0 +1,165 @@
+package com.vaadin.demo.rag;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.transformer.QueryTransformer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link ContentRetriever} that searches several variants of a query in parallel and merges the results.
+ * <p>
+ * The original query is searched on the calling thread, while the {@link QueryTransformer} generates the
+ * variants on the given executor. Variants are embedded and searched concurrently, and whatever has not
+ * finished when the deadline (counted from the start of the call) passes is dropped. Expansion therefore
+ * never delays retrieval by more than the deadline, however slow the transformer or the store is. The
+ * executor should have a bounded queue that discards tasks when full, so that a saturated pool drops
+ * variants instead of queueing them behind other chats.
+ */
+public class ExpandingContentRetriever implements ContentRetriever {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpandingContentRetriever.class);
+
+    private final ContentRetriever delegate;
+    private final QueryTransformer queryTransformer;
+    private final Duration deadline;
+    private final Executor executor;
+    private final Timer expansionTimer;
+    private final Counter variantsSearched;
+    private final Counter variantsDropped;
+    private final Counter variantsFailed;
+    private final Counter transformTimeouts;
+    private final Counter transformFailures;
+
+    /**
+     * @param delegate         the retriever to search the original query and each variant with
+     * @param queryTransformer generates the query variants, the original query may be among them
+     * @param deadline         the longest time expansion may add to retrieval
+     * @param executor         runs the transformation and the searches of the variants
+     * @param meterRegistry    the registry to report expansion metrics to
+     */
+    public ExpandingContentRetriever(ContentRetriever delegate, QueryTransformer queryTransformer, Duration deadline,
+                                     Executor executor, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.queryTransformer = queryTransformer;
+        this.deadline = deadline;
+        this.executor = executor;
+        this.expansionTimer = Timer.builder("rag.query.expansion")
+                .description("Time spent retrieving the original query together with its variants")
+                .register(meterRegistry);
+        this.variantsSearched = variantCounter(meterRegistry, "searched");
+        this.variantsDropped = variantCounter(meterRegistry, "deadline");
+        this.variantsFailed = variantCounter(meterRegistry, "failed");
+        this.transformTimeouts = transformCounter(meterRegistry, "timeout");
+        this.transformFailures = transformCounter(meterRegistry, "failed");
+    }
+
+    private static Counter variantCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("rag.query.expansion.variants")
+                .description("Query variants generated for expansion")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static Counter transformCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("rag.query.expansion.transforms")
+                .description("Query transformations that produced no variants")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        return expansionTimer.record(() -> retrieveExpanded(query));
+    }
+
+    private List<Content> retrieveExpanded(Query query) {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        var variants = CompletableFuture.supplyAsync(() -> queryTransformer.transform(query), executor)
+                .thenApply(queries -> queries.stream()
+                        .filter(variant -> !variant.text().equals(query.text()))
+                        // Variants generated after the deadline would be dropped anyway, so don't search them
+                        .filter(variant -> System.nanoTime() < deadlineNanos)
+                        .map(variant -> CompletableFuture.supplyAsync(() -> delegate.retrieve(variant), executor))
+                        .toList());
+
+        var results = new ArrayList<List<Content>>();
+        results.add(delegate.retrieve(query));
+        List<CompletableFuture<List<Content>>> searches = List.of();
+        try {
+            searches = awaitUntil(variants, deadlineNanos);
+        } catch (TimeoutException e) {
+            transformTimeouts.increment();
+        } catch (ExecutionException e) {
+            log.warn("Query expansion failed, continuing without it", e.getCause());
+            transformFailures.increment();
+        }
+        for (var search : searches) {
+            try {
+                results.add(awaitUntil(search, deadlineNanos));
+                variantsSearched.increment();
+            } catch (TimeoutException e) {
+                variantsDropped.increment();
+            } catch (ExecutionException e) {
+                log.warn("Searching a query variant failed, continuing without it", e.getCause());
+                variantsFailed.increment();
+            }
+        }
+        return merge(results);
+    }
+
+    /**
+     * Waits for the given future until the deadline, cancelling it if it has not completed by then.
+     * Being interrupted counts as missing the deadline.
+     */
+    private static <T> T awaitUntil(CompletableFuture<T> future, long deadlineNanos)
+            throws TimeoutException, ExecutionException {
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new TimeoutException("Interrupted while waiting for query expansion");
+        }
+    }
+
+    /**
+     * Merges the results of all queries, keeping each segment once with its best score.
+     */
+    private static List<Content> merge(Collection<List<Content>> results) {
+        var byText = new LinkedHashMap<String, Content>();
+        for (var contents : results) {
+            for (var content : contents) {
+                byText.merge(content.textSegment().text(), content,
+                        (a, b) -> scoreOf(a) >= scoreOf(b) ? a : b);
+            }
+        }
+        var merged = new ArrayList<>(byText.values());
+        merged.sort(Comparator.comparingDouble(ExpandingContentRetriever::scoreOf).reversed());
+        return merged;
+    }
+
+    private static double scoreOf(Content content) {
+        return content.metadata().get(ContentMetadata.SCORE) instanceof Number score ? score.doubleValue() : 0.0;
+    }
+}
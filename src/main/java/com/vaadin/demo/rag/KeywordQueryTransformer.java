@@ -0,0 +1,89 @@
+package com.vaadin.demo.rag;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.transformer.QueryTransformer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A rule-based {@link QueryTransformer} that derives query variants without calling a model:
+ * <ul>
+ *     <li>the question reduced to its keywords, which matches terse document text better than a full sentence</li>
+ *     <li>for short follow-up questions, the keywords combined with those of the previous question in the chat,
+ *     so "and how do I configure it?" still finds the documents about the topic being discussed</li>
+ * </ul>
+ * The original query is always returned first.
+ */
+public class KeywordQueryTransformer implements QueryTransformer {
+
+    private static final int SHORT_QUESTION_KEYWORDS = 4;
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "about", "an", "and", "are", "as", "at", "be", "by", "can", "could", "do", "does", "for", "from",
+            "how", "i", "in", "is", "it", "its", "me", "my", "of", "on", "or", "please", "should", "tell", "that",
+            "the", "there", "this", "to", "us", "was", "we", "what", "when", "where", "which", "who", "why", "will",
+            "with", "would", "you", "your");
+
+    private final int maxVariants;
+
+    /**
+     * @param maxVariants the maximum number of variants returned in addition to the original query
+     */
+    public KeywordQueryTransformer(int maxVariants) {
+        this.maxVariants = maxVariants;
+    }
+
+    @Override
+    public Collection<Query> transform(Query query) {
+        var texts = new LinkedHashSet<String>();
+        texts.add(query.text());
+
+        var keywords = keywords(query.text());
+        if (!keywords.isEmpty()) {
+            texts.add(String.join(" ", keywords));
+        }
+        if (keywords.size() <= SHORT_QUESTION_KEYWORDS) {
+            var previous = previousQuestion(query);
+            if (previous != null) {
+                var combined = new LinkedHashSet<>(keywords);
+                combined.addAll(keywords(previous));
+                texts.add(String.join(" ", combined));
+            }
+        }
+
+        return texts.stream()
+                .filter(text -> !text.isBlank())
+                .limit(maxVariants + 1L)
+                .map(text -> Query.from(text, query.metadata()))
+                .toList();
+    }
+
+    static List<String> keywords(String text) {
+        return Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}_.-]+"))
+                .map(word -> word.replaceAll("^[.-]+|[.-]+$", ""))
+                .filter(word -> !word.isEmpty() && !STOP_WORDS.contains(word))
+                .distinct()
+                .toList();
+    }
+
+    private static String previousQuestion(Query query) {
+        if (query.metadata() == null || query.metadata().chatMemory() == null) {
+            return null;
+        }
+        List<ChatMessage> history = new ArrayList<>(query.metadata().chatMemory());
+        for (int i = history.size() - 1; i >= 0; i--) {
+            if (history.get(i) instanceof UserMessage userMessage && userMessage.hasSingleText()) {
+                // The memory holds the augmented message, the question is the part before the injected content
+                return userMessage.singleText().split("\n\n", 2)[0];
+            }
+        }
+        return null;
+    }
+}
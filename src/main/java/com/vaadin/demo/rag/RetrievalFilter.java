@@ -0,0 +1,81 @@
+package com.vaadin.demo.rag;
+
+import com.vaadin.demo.index.DocumentMetadata;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.logical.And;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * The metadata restrictions a chat applies to retrieval. Any component may be {@code null}, meaning the
+ * field is not restricted.
+ *
+ * @param folder         the folder the documents must be in, directly or in one of its sub-folders, see
+ *                       {@link DocumentMetadata#FOLDER}
+ * @param extension      the file extension the documents must have, see {@link DocumentMetadata#EXTENSION}
+ * @param modifiedAfter  the first day the documents may have been modified on
+ * @param modifiedBefore the last day the documents may have been modified on
+ */
+public record RetrievalFilter(String folder, String extension, LocalDate modifiedAfter, LocalDate modifiedBefore) {
+
+    public static final RetrievalFilter NONE = new RetrievalFilter(null, null, null, null);
+
+    public RetrievalFilter withFolder(String folder) {
+        return new RetrievalFilter(folder, extension, modifiedAfter, modifiedBefore);
+    }
+
+    public RetrievalFilter withExtension(String extension) {
+        return new RetrievalFilter(folder, extension, modifiedAfter, modifiedBefore);
+    }
+
+    public RetrievalFilter withModifiedAfter(LocalDate modifiedAfter) {
+        return new RetrievalFilter(folder, extension, modifiedAfter, modifiedBefore);
+    }
+
+    public RetrievalFilter withModifiedBefore(LocalDate modifiedBefore) {
+        return new RetrievalFilter(folder, extension, modifiedAfter, modifiedBefore);
+    }
+
+    /**
+     * Converts this filter to an embedding store {@link Filter}. The store applies it as part of the
+     * vector search, so only matching segments are scanned.
+     *
+     * @return the store filter, or {@code null} if nothing is restricted
+     */
+    public Filter toFilter() {
+        var filters = new ArrayList<Filter>();
+        if (folder != null && !folder.equals(DocumentMetadata.ROOT_FOLDER)) {
+            filters.add(folderFilter(folder));
+        }
+        if (extension != null) {
+            filters.add(metadataKey(DocumentMetadata.EXTENSION).isEqualTo(extension));
+        }
+        if (modifiedAfter != null) {
+            filters.add(metadataKey(DocumentMetadata.LAST_MODIFIED).isGreaterThanOrEqualTo(startOf(modifiedAfter)));
+        }
+        if (modifiedBefore != null) {
+            filters.add(metadataKey(DocumentMetadata.LAST_MODIFIED).isLessThan(startOf(modifiedBefore.plusDays(1))));
+        }
+        return filters.stream().reduce(And::new).orElse(null);
+    }
+
+    /**
+     * Matches the segments whose ancestor folder at the depth of the given folder is that folder. Folders
+     * deeper than {@link DocumentMetadata#MAX_FOLDER_DEPTH} have no ancestor key, so only their own files match.
+     */
+    private static Filter folderFilter(String folder) {
+        int depth = DocumentMetadata.ancestorsOf(folder).size();
+        var key = depth <= DocumentMetadata.MAX_FOLDER_DEPTH
+                ? DocumentMetadata.folderAtDepth(depth)
+                : DocumentMetadata.FOLDER;
+        return metadataKey(key).isEqualTo(folder);
+    }
+
+    private static long startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,279 @@
+package com.vaadin.demo.rag;
+
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Metadata;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link QueryRouter} that lets retrieval start while the user is still typing.
+ * <p>
+ * {@link #prefetch(String, String)} retrieves content for a partial question in the background through the
+ * delegate router and keeps the result in a small cache per chat. When the question is submitted, the
+ * retriever returned by {@link #route(Query)} reuses a cached result if its text matches the final question
+ * exactly or closely enough, and only falls back to retrieving from scratch otherwise. A new prefetch
+ * cancels the previous one of the same chat if that has not finished (a queued one is skipped, a running
+ * one completes but is discarded), and cached results are only reused for the tenant and filter they were
+ * retrieved with.
+ * <p>
+ * Prefetching must never make a submit slower than no prefetching: partial questions with too few keywords
+ * are not prefetched, prefetches beyond a small queue are rejected, and a submit waits at most
+ * {@value #MAX_WAIT_MS} ms for a prefetch that is still running before retrieving on its own.
+ */
+public class SpeculativeQueryRouter implements QueryRouter, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SpeculativeQueryRouter.class);
+    private static final int PREFETCH_THREADS = 2;
+    private static final int PREFETCH_QUEUE_SIZE = 8;
+    private static final int MIN_KEYWORDS = 2;
+    private static final long MAX_WAIT_MS = 100;
+
+    private final QueryRouter delegate;
+    private final ChatSessions chatSessions;
+    private final int cacheSize;
+    private final double matchThreshold;
+    private final ExecutorService executor;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final Counter prefetchesStarted;
+    private final Counter prefetchesCancelled;
+    private final Counter prefetchesRejected;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter notPrefetched;
+
+    /**
+     * @param delegate       the router to retrieve content through
+     * @param chatSessions   the sessions holding the tenant and filter of each chat
+     * @param cacheSize      the number of prefetched results kept per chat, {@code 0} disables prefetching
+     * @param matchThreshold the keyword similarity above which a prefetched question counts as the same question
+     * @param meterRegistry  the registry to report prefetch metrics to
+     */
+    public SpeculativeQueryRouter(QueryRouter delegate, ChatSessions chatSessions, int cacheSize, double matchThreshold,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.chatSessions = chatSessions;
+        this.cacheSize = cacheSize;
+        this.matchThreshold = matchThreshold;
+        var threadFactory = new CustomizableThreadFactory("prefetch-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(PREFETCH_QUEUE_SIZE), threadFactory);
+        this.prefetchesStarted = prefetchCounter(meterRegistry, "started");
+        this.prefetchesCancelled = prefetchCounter(meterRegistry, "cancelled");
+        this.prefetchesRejected = prefetchCounter(meterRegistry, "rejected");
+        this.hits = lookupCounter(meterRegistry, "hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        this.notPrefetched = lookupCounter(meterRegistry, "disabled");
+    }
+
+    private static Counter prefetchCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("rag.speculative.prefetches")
+                .description("Retrievals started while the user was typing")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("rag.speculative.lookups")
+                .description("Submitted questions looked up among the prefetched results")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns whether prefetching is enabled, i.e. whether {@link #prefetch(String, String)} does anything.
+     *
+     * @return {@code true} if prefetched results are kept
+     */
+    public boolean isEnabled() {
+        return cacheSize > 0;
+    }
+
+    /**
+     * Starts retrieving content for the given partial question in the background, cancelling the chat's
+     * previous prefetch if it has not finished. Questions with fewer than {@value #MIN_KEYWORDS} keywords are
+     * too vague to be worth it and are skipped, as are prefetches while the queue is full.
+     *
+     * @param chatId the chat the question is typed in
+     * @param text   the question typed so far
+     */
+    public void prefetch(String chatId, String text) {
+        var key = normalize(text);
+        if (!isEnabled() || KeywordQueryTransformer.keywords(key).size() < MIN_KEYWORDS) {
+            return;
+        }
+        var scope = scopeOf(chatId);
+        var session = sessions.computeIfAbsent(chatId, id -> new Session());
+        synchronized (session) {
+            var cached = session.entries.get(key);
+            if (cached != null && cached.scope.equals(scope) && !cached.result.isCompletedExceptionally()) {
+                return;
+            }
+            if (session.inFlight != null && !session.inFlight.result.isDone()) {
+                // Not yet started prefetches are skipped entirely, running ones finish but are discarded
+                session.inFlight.result.cancel(false);
+                session.entries.values().remove(session.inFlight);
+                prefetchesCancelled.increment();
+            }
+            var query = Query.from(text, Metadata.from(UserMessage.from(text), chatId, List.of()));
+            CompletableFuture<List<Content>> result;
+            try {
+                result = CompletableFuture.supplyAsync(() -> retrieve(query), executor);
+            } catch (RejectedExecutionException e) {
+                prefetchesRejected.increment();
+                session.inFlight = null;
+                return;
+            }
+            var entry = new Entry(key, scope, result);
+            session.entries.put(key, entry);
+            session.inFlight = entry;
+            prefetchesStarted.increment();
+        }
+    }
+
+    /**
+     * Forgets the prefetched results of the given chat.
+     *
+     * @param chatId the chat ID
+     */
+    public void end(String chatId) {
+        var session = sessions.remove(chatId);
+        if (session != null) {
+            synchronized (session) {
+                session.entries.values().forEach(entry -> entry.result.cancel(false));
+            }
+        }
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        return List.of(this::lookupOrRetrieve);
+    }
+
+    private List<Content> lookupOrRetrieve(Query query) {
+        var chatId = ChatSessions.chatIdOf(query);
+        var session = chatId == null ? null : sessions.get(chatId.toString());
+        if (session == null) {
+            // The chat never prefetched anything, e.g. because search while typing is off
+            notPrefetched.increment();
+            return retrieve(query);
+        }
+        var entry = session.match(normalize(query.text()), scopeOf(chatId), matchThreshold);
+        if (entry != null) {
+            try {
+                var result = entry.result.get(MAX_WAIT_MS, TimeUnit.MILLISECONDS);
+                hits.increment();
+                return result;
+            } catch (TimeoutException e) {
+                // Still queued or slow, retrieving now is faster than waiting for it
+                entry.result.cancel(false);
+            } catch (CancellationException | ExecutionException e) {
+                log.debug("Prefetched retrieval unusable, retrieving again", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        misses.increment();
+        return retrieve(query);
+    }
+
+    private List<Content> retrieve(Query query) {
+        var contents = new ArrayList<Content>();
+        for (var retriever : delegate.route(query)) {
+            contents.addAll(retriever.retrieve(query));
+        }
+        return contents;
+    }
+
+    private Scope scopeOf(Object chatId) {
+        return new Scope(chatSessions.tenantOf(chatId), chatSessions.filterOf(chatId));
+    }
+
+    static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").replaceAll("[\\s?!.]+$", "").trim();
+    }
+
+    static double similarity(String a, String b) {
+        var keywordsA = new HashSet<>(KeywordQueryTransformer.keywords(a));
+        var keywordsB = new HashSet<>(KeywordQueryTransformer.keywords(b));
+        if (keywordsA.isEmpty() || keywordsB.isEmpty()) {
+            return 0.0;
+        }
+        var union = new HashSet<>(keywordsA);
+        union.addAll(keywordsB);
+        keywordsA.retainAll(keywordsB);
+        return (double) keywordsA.size() / union.size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private record Scope(String tenant, RetrievalFilter filter) {
+    }
+
+    private record Entry(String text, Scope scope, CompletableFuture<List<Content>> result) {
+    }
+
+    private final class Session {
+
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        private Entry inFlight;
+
+        /**
+         * Finds the prefetched result for the submitted question. A prefetch of exactly this question is used
+         * even if it is still running, a merely similar one only if it has already completed.
+         */
+        synchronized Entry match(String text, Scope scope, double threshold) {
+            var exact = entries.get(text);
+            if (exact != null && exact.scope.equals(scope) && !exact.result.isCancelled()) {
+                return exact;
+            }
+            Entry best = null;
+            double bestSimilarity = threshold;
+            for (var entry : entries.values()) {
+                if (!entry.scope.equals(scope) || !entry.result.isDone() || entry.result.isCompletedExceptionally()) {
+                    continue;
+                }
+                double similarity = similarity(text, entry.text);
+                if (similarity >= bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.vaadin.demo.rag;
+
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A {@link QueryRouter} that sends each query only to the {@link ContentRetriever} of the tenant the chat
+ * belongs to, so a search never scans the documents of other tenants.
+ */
+public class TenantQueryRouter implements QueryRouter {
+
+    private final ChatSessions chatSessions;
+    private final Function<String, ContentRetriever> retrieverFactory;
+    private final Map<String, ContentRetriever> retrievers = new ConcurrentHashMap<>();
+
+    /**
+     * @param chatSessions     the sessions to look up the tenant of a chat in
+     * @param retrieverFactory creates the content retriever of a tenant, called once per tenant
+     */
+    public TenantQueryRouter(ChatSessions chatSessions, Function<String, ContentRetriever> retrieverFactory) {
+        this.chatSessions = chatSessions;
+        this.retrieverFactory = retrieverFactory;
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        var tenant = chatSessions.tenantOf(ChatSessions.chatIdOf(query));
+        return List.of(retrievers.computeIfAbsent(tenant, retrieverFactory));
+    }
+}
@@ -1,26 +1,52 @@
 package com.vaadin.demo.views;
 
 import com.vaadin.demo.AiAssistant;
+import com.vaadin.demo.index.TenantIndexes;
+import com.vaadin.demo.rag.ChatSessions;
+import com.vaadin.demo.rag.RetrievalFilter;
+import com.vaadin.demo.rag.SpeculativeQueryRouter;
 import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.checkbox.Checkbox;
+import com.vaadin.flow.component.datepicker.DatePicker;
+import com.vaadin.flow.component.details.Details;
 import com.vaadin.flow.component.messages.MessageInput;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.Scroller;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.select.Select;
+import com.vaadin.flow.dom.DomListenerRegistration;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
 import com.vaadin.flow.theme.lumo.LumoUtility;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.vaadin.firitin.components.messagelist.MarkdownMessage;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @PageTitle("Chat")
 @Route(value = "", layout = MainLayout.class)
 public class ChatView extends VerticalLayout {
 
+    private static final int PREFETCH_DEBOUNCE_MS = 400;
+
     private String chatId = UUID.randomUUID().toString();
     private MessageInput messageInput = new MessageInput();
+    private DomListenerRegistration prefetchListener;
 
-    public ChatView(AiAssistant aiAssistant) {
+    public ChatView(AiAssistant aiAssistant, ChatSessions chatSessions, TenantIndexes tenantIndexes,
+                    SpeculativeQueryRouter speculativeQueryRouter, MeterRegistry meterRegistry) {
+        var firstTokenTimer = firstTokenTimer(meterRegistry, "token");
+        var failureTimer = firstTokenTimer(meterRegistry, "error");
         var newChatButton = new Button("New Chat");
+        var tenantSelect = new Select<String>();
+        var folderSelect = new Select<String>();
+        var extensionSelect = new Select<String>();
+        var modifiedAfter = new DatePicker();
+        var modifiedBefore = new DatePicker();
+        var prefetchToggle = new Checkbox("Search while typing");
+        prefetchToggle.setVisible(speculativeQueryRouter.isEnabled());
         var messageList = new VerticalLayout();
         focusMessageInput();
 
@@ -30,11 +56,68 @@ public class ChatView extends VerticalLayout {
         messageList.addClassNames(LumoUtility.Padding.Horizontal.SMALL, LumoUtility.Margin.Horizontal.AUTO,
                 LumoUtility.MaxWidth.SCREEN_MEDIUM);
 
-        newChatButton.addClassName("new-chat-button");
-        newChatButton.addClickListener(e -> {
+        Runnable applyFilter = () -> chatSessions.setFilter(chatId, new RetrievalFilter(folderSelect.getValue(),
+                extensionSelect.getValue(), modifiedAfter.getValue(), modifiedBefore.getValue()));
+        Runnable newChat = () -> {
+            chatSessions.end(chatId);
+            speculativeQueryRouter.end(chatId);
             chatId = UUID.randomUUID().toString();
+            chatSessions.setTenant(chatId, tenantSelect.getValue());
+            applyFilter.run();
             messageList.removeAll();
             focusMessageInput();
+        };
+        newChatButton.addClickListener(e -> newChat.run());
+
+        // Each tenant has its own index, switching starts a new chat that only searches the selected one
+        var tenants = tenantIndexes.tenants();
+        tenantSelect.setItems(tenants);
+        tenantSelect.setValue(tenantIndexes.defaultTenant());
+        tenantSelect.setVisible(tenants.size() > 1);
+        tenantSelect.setAriaLabel("Workspace");
+        tenantSelect.addValueChangeListener(e -> {
+            folderSelect.setItems(tenantIndexes.folders(e.getValue()));
+            extensionSelect.setItems(tenantIndexes.extensions(e.getValue()));
+            newChat.run();
+        });
+        chatSessions.setTenant(chatId, tenantSelect.getValue());
+
+        // Metadata filters are pushed down to the vector search of the current chat
+        folderSelect.setItems(tenantIndexes.folders(tenantSelect.getValue()));
+        folderSelect.setEmptySelectionAllowed(true);
+        folderSelect.setEmptySelectionCaption("All folders");
+        folderSelect.setHelperText("Includes sub-folders");
+        folderSelect.setAriaLabel("Folder");
+        extensionSelect.setItems(tenantIndexes.extensions(tenantSelect.getValue()));
+        extensionSelect.setEmptySelectionAllowed(true);
+        extensionSelect.setEmptySelectionCaption("All file types");
+        extensionSelect.setAriaLabel("File type");
+        modifiedAfter.setPlaceholder("Modified from");
+        modifiedBefore.setPlaceholder("Modified until");
+        folderSelect.addValueChangeListener(e -> applyFilter.run());
+        extensionSelect.addValueChangeListener(e -> applyFilter.run());
+        modifiedAfter.addValueChangeListener(e -> applyFilter.run());
+        modifiedBefore.addValueChangeListener(e -> applyFilter.run());
+
+        // Opt-in: retrieve for the partial question while typing, the submit reuses a matching result
+        prefetchToggle.addValueChangeListener(e -> {
+            if (e.getValue()) {
+                prefetchListener = messageInput.getElement()
+                        .addEventListener("input", event -> speculativeQueryRouter.prefetch(chatId,
+                                event.getEventData().getString("event.target.value")))
+                        .addEventData("event.target.value")
+                        .debounce(PREFETCH_DEBOUNCE_MS);
+            } else if (prefetchListener != null) {
+                prefetchListener.remove();
+                prefetchListener = null;
+                speculativeQueryRouter.end(chatId);
+            }
+        });
+        var filters = new Details("Filters",
+                new VerticalLayout(folderSelect, extensionSelect, modifiedAfter, modifiedBefore, prefetchToggle));
+        addDetachListener(e -> {
+            chatSessions.end(chatId);
+            speculativeQueryRouter.end(chatId);
         });
 
         messageInput.setWidthFull();
@@ -51,19 +134,32 @@ public class ChatView extends VerticalLayout {
             messageList.add(question);
             messageList.add(answer);
 
+            // Time to first token, to compare against the prompt size reported by the context packing
+            var sample = Timer.start(meterRegistry);
+            var waiting = new AtomicBoolean(true);
             aiAssistant.chat(chatId, questionText)
-                    .onPartialResponse(answer::appendMarkdownAsync)
+                    .onPartialResponse(token -> {
+                        if (waiting.getAndSet(false)) {
+                            sample.stop(firstTokenTimer);
+                        }
+                        answer.appendMarkdownAsync(token);
+                    })
                     .onCompleteResponse(complete -> {
                         // Optionally do something on complete
                     })
                     .onError(err -> {
+                        if (waiting.getAndSet(false)) {
+                            sample.stop(failureTimer);
+                        }
                         answer.appendMarkdownAsync("\n⚠️ An error occurred: " + err.getMessage());
                     })
                     .start();
         });
 
 
-        add(newChatButton);
+        var toolbar = new HorizontalLayout(filters, tenantSelect, newChatButton);
+        toolbar.addClassName("chat-toolbar");
+        add(toolbar);
         var scroller = new Scroller(messageList);
         scroller.setWidthFull();
         scroller.addClassName(LumoUtility.AlignContent.END);
@@ -71,6 +167,13 @@ public class ChatView extends VerticalLayout {
         add(messageInput);
     }
 
+    private static Timer firstTokenTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("chat.first.token")
+                .description("Time from submitting a question to the first answer token, or to the error")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
     private void focusMessageInput() {
         messageInput.getElement().executeJs("requestAnimationFrame(() => this.querySelector('vaadin-text-area').focus() )");
     }
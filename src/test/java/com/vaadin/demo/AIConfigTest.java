@@ -1,11 +1,15 @@
 import com.vaadin.demo.AIConfig;
 import com.vaadin.demo.config.AIDocsProperties;
-import dev.langchain4j.data.segment.TextSegment;
+import com.vaadin.demo.index.TenantIndexes;
+import com.vaadin.demo.rag.ChatSessions;
+import com.vaadin.demo.rag.SpeculativeQueryRouter;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.qdrant.client.QdrantClient;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -22,14 +26,33 @@ class AIConfigTest {
         props.setLangchain4j(lc);
 
         AIConfig config = new AIConfig(props);
-        EmbeddingStore<TextSegment> embeddingStore = config.embeddingStore();
-        assertNotNull(embeddingStore);
+        QdrantClient qdrantClient = config.qdrantClient();
+        assertNotNull(qdrantClient);
         EmbeddingModel embeddingModel = config.embeddingModel();
         assertNotNull(embeddingModel);
+        TenantIndexes tenantIndexes = config.tenantIndexes(qdrantClient, embeddingModel);
+        assertNotNull(tenantIndexes.store("default"));
+        assertNotNull(config.tenantIndexEndpoint(tenantIndexes));
+        ChatSessions chatSessions = config.chatSessions();
+        assertEquals("default", chatSessions.tenantOf("id"));
+        SpeculativeQueryRouter queryRouter = config.queryRouter(tenantIndexes, embeddingModel, chatSessions,
+                new SimpleMeterRegistry());
+        assertNotNull(queryRouter);
+        assertTrue(queryRouter.isEnabled());
+        props.getRetrieval().getExpansion().setEnabled(true);
+        try (SpeculativeQueryRouter expandingRouter = config.queryRouter(tenantIndexes, embeddingModel, chatSessions,
+                new SimpleMeterRegistry())) {
+            assertFalse(expandingRouter.isEnabled());
+        }
+        RetrievalAugmentor augmentor = config.retrievalAugmentor(queryRouter, new SimpleMeterRegistry());
+        assertNotNull(augmentor);
         ChatMemoryProvider provider = config.chatMemoryProvider();
         MessageWindowChatMemory memory = (MessageWindowChatMemory) provider.get("id");
         assertNotNull(memory);
         StreamingChatLanguageModel model = config.streamingChatLanguageModel();
         assertNotNull(model);
+        qdrantClient.close();
+        queryRouter.close();
+        config.destroy();
     }
 }
@@ -2,6 +2,8 @@ import com.vaadin.demo.config.AIDocsProperties;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.time.Duration;
+
 class AIDocsPropertiesTest {
     @Test
     void gettersAndSettersWork() {
@@ -26,4 +28,83 @@ class AIDocsPropertiesTest {
         assertEquals("embed", open.getEmbeddingModelName());
         assertEquals("chatUrl", open.getBaseUrlChat());
     }
+
+    @Test
+    void retrievalDefaultsAndSetters() {
+        AIDocsProperties props = new AIDocsProperties();
+        AIDocsProperties.Retrieval retrieval = props.getRetrieval();
+        assertEquals(8, retrieval.getMaxResults());
+        assertEquals(1500, retrieval.getContextTokenBudget());
+
+        retrieval = new AIDocsProperties.Retrieval();
+        retrieval.setMaxResults(4);
+        retrieval.setMinScore(0.5);
+        retrieval.setContextTokenBudget(800);
+        retrieval.setDuplicateThreshold(0.7);
+        props.setRetrieval(retrieval);
+
+        assertEquals(retrieval, props.getRetrieval());
+        assertEquals(4, retrieval.getMaxResults());
+        assertEquals(0.5, retrieval.getMinScore());
+        assertEquals(800, retrieval.getContextTokenBudget());
+        assertEquals(0.7, retrieval.getDuplicateThreshold());
+
+        AIDocsProperties.Retrieval.Expansion expansion = retrieval.getExpansion();
+        assertFalse(expansion.isEnabled());
+        assertEquals(3, expansion.getVariants());
+        assertEquals(Duration.ofMillis(300), expansion.getDeadline());
+        assertNull(expansion.getModelName());
+
+        expansion = new AIDocsProperties.Retrieval.Expansion();
+        expansion.setEnabled(true);
+        expansion.setVariants(2);
+        expansion.setDeadline(Duration.ofMillis(150));
+        expansion.setModelName("qwen2.5:0.5b");
+        retrieval.setExpansion(expansion);
+
+        assertEquals(expansion, retrieval.getExpansion());
+        assertTrue(expansion.isEnabled());
+        assertEquals(2, expansion.getVariants());
+        assertEquals(Duration.ofMillis(150), expansion.getDeadline());
+        assertEquals("qwen2.5:0.5b", expansion.getModelName());
+
+        AIDocsProperties.Retrieval.Speculative speculative = retrieval.getSpeculative();
+        assertEquals(4, speculative.getCacheSize());
+        assertEquals(0.8, speculative.getMatchThreshold());
+
+        speculative = new AIDocsProperties.Retrieval.Speculative();
+        speculative.setCacheSize(2);
+        speculative.setMatchThreshold(0.6);
+        retrieval.setSpeculative(speculative);
+
+        assertEquals(speculative, retrieval.getSpeculative());
+        assertEquals(2, speculative.getCacheSize());
+        assertEquals(0.6, speculative.getMatchThreshold());
+    }
+
+    @Test
+    void indexDefaultsAndSetters() {
+        AIDocsProperties props = new AIDocsProperties();
+        AIDocsProperties.Index index = props.getIndex();
+        assertEquals("qdrant-service", index.getHost());
+        assertEquals(6334, index.getPort());
+        assertEquals("documents", index.getCollectionPrefix());
+        assertEquals("default", index.getDefaultTenant());
+        assertNull(index.getSnapshotLocation());
+
+        index = new AIDocsProperties.Index();
+        index.setHost("localhost");
+        index.setPort(6000);
+        index.setCollectionPrefix("docs");
+        index.setDefaultTenant("shared");
+        index.setSnapshotLocation("/snapshots");
+        props.setIndex(index);
+
+        assertEquals(index, props.getIndex());
+        assertEquals("localhost", index.getHost());
+        assertEquals(6000, index.getPort());
+        assertEquals("docs", index.getCollectionPrefix());
+        assertEquals("shared", index.getDefaultTenant());
+        assertEquals("/snapshots", index.getSnapshotLocation());
+    }
 }
@@ -0,0 +1,65 @@
+import com.vaadin.demo.index.DocumentMetadata;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+class DocumentMetadataTest {
+
+    @TempDir
+    Path root;
+
+    private static Document loaded(Path file) {
+        return Document.from("text", new Metadata()
+                .put("file_name", file.getFileName().toString())
+                .put("absolute_directory_path", file.getParent().toAbsolutePath().toString()));
+    }
+
+    @Test
+    void addsPathExtensionAndModificationTime() throws Exception {
+        Path file = Files.createDirectories(root.resolve("guides/setup")).resolve("Install.MD");
+        Files.writeString(file, "text");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_700_000_000_000L));
+
+        Metadata metadata = DocumentMetadata.enrich(loaded(file), root).metadata();
+
+        assertEquals("guides/setup/Install.MD", metadata.getString(DocumentMetadata.RELATIVE_PATH));
+        assertEquals("guides/setup", metadata.getString(DocumentMetadata.FOLDER));
+        assertEquals("guides", metadata.getString("folder_1"));
+        assertEquals("guides/setup", metadata.getString("folder_2"));
+        assertNull(metadata.getString("folder_3"));
+        assertEquals("md", metadata.getString(DocumentMetadata.EXTENSION));
+        assertEquals(1_700_000_000_000L, metadata.getLong(DocumentMetadata.LAST_MODIFIED));
+    }
+
+    @Test
+    void topLevelFilesAreInRootFolder() throws Exception {
+        Path file = Files.writeString(root.resolve("README"), "text");
+
+        Metadata metadata = DocumentMetadata.enrich(loaded(file), root).metadata();
+
+        assertEquals("/", metadata.getString(DocumentMetadata.FOLDER));
+        assertNull(metadata.getString("folder_1"));
+        assertEquals("", metadata.getString(DocumentMetadata.EXTENSION));
+    }
+
+    @Test
+    void listsAncestorsOfFolder() {
+        assertEquals(List.of("a", "a/b", "a/b/c"), DocumentMetadata.ancestorsOf("a/b/c"));
+        assertEquals(List.of("a"), DocumentMetadata.ancestorsOf("a"));
+        assertEquals(List.of(), DocumentMetadata.ancestorsOf("/"));
+    }
+
+    @Test
+    void documentsWithoutFileAreLeftAlone() {
+        Document document = Document.from("text");
+
+        assertNull(DocumentMetadata.enrich(document, root).metadata().getString(DocumentMetadata.FOLDER));
+    }
+}
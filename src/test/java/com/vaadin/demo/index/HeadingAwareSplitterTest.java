@@ -0,0 +1,45 @@
+import com.vaadin.demo.index.DocumentMetadata;
+import com.vaadin.demo.index.HeadingAwareSplitter;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+class HeadingAwareSplitterTest {
+
+    @Test
+    void recordsClosestHeadingAboveEachSegment() {
+        Document document = Document.from("""
+                Preface without a heading.
+
+                # Installation
+
+                Download the archive and unpack it.
+
+                ## Configuration ##
+
+                Set the document location before starting.
+                """);
+
+        List<TextSegment> segments = new HeadingAwareSplitter(DocumentSplitters.recursive(45, 0)).split(document);
+
+        assertNull(segments.get(0).metadata().getString(DocumentMetadata.HEADING));
+        assertEquals("Installation", segments.stream()
+                .filter(s -> s.text().contains("Download"))
+                .findFirst().orElseThrow()
+                .metadata().getString(DocumentMetadata.HEADING));
+        assertEquals("Configuration", segments.get(segments.size() - 1).metadata().getString(DocumentMetadata.HEADING));
+    }
+
+    @Test
+    void leavesDocumentsWithoutHeadingsUnchanged() {
+        List<TextSegment> segments = new HeadingAwareSplitter(DocumentSplitters.recursive(100, 0))
+                .split(Document.from("Just some plain text."));
+
+        assertEquals(1, segments.size());
+        assertNull(segments.get(0).metadata().getString(DocumentMetadata.HEADING));
+    }
+}
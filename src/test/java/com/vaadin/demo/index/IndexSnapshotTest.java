@@ -0,0 +1,139 @@
+import com.vaadin.demo.index.IndexSnapshot;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+class IndexSnapshotTest {
+
+    private static final IndexSnapshot.Header HEADER = new IndexSnapshot.Header("nomic-embed-text", 3, "abc");
+
+    private static byte[] snapshot(int records) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var writer = new IndexSnapshot.Writer(bytes, HEADER)) {
+            for (int i = 0; i < records; i++) {
+                var metadata = new Metadata()
+                        .put("file_name", "doc" + i + ".md")
+                        .put("index", String.valueOf(i))
+                        .put("last_modified", 1_700_000_000_000L + i)
+                        .put("page", i)
+                        .put("weight", 0.5f)
+                        .put("score", 0.25)
+                        .put("id", new UUID(0, i));
+                writer.write(Embedding.from(new float[]{i, -i, 0.5f}), TextSegment.from("segment " + i, metadata));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<IndexSnapshot.Chunk> readAll(byte[] snapshot) throws IOException {
+        var chunks = new ArrayList<IndexSnapshot.Chunk>();
+        try (var reader = new IndexSnapshot.Reader(new ByteArrayInputStream(snapshot))) {
+            assertEquals(HEADER, reader.header());
+            for (var chunk = reader.next(); chunk != null; chunk = reader.next()) {
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    @Test
+    void roundTripsSegmentsVectorsAndMetadataInChunks() throws Exception {
+        var chunks = readAll(snapshot(300));
+
+        assertEquals(2, chunks.size());
+        assertEquals(256, chunks.get(0).segments().size());
+        assertEquals(44, chunks.get(1).segments().size());
+
+        var segment = chunks.get(1).segments().get(43);
+        assertEquals("segment 299", segment.text());
+        assertEquals("doc299.md", segment.metadata().getString("file_name"));
+        assertEquals(1_700_000_000_299L, segment.metadata().getLong("last_modified"));
+        assertEquals(299, segment.metadata().getInteger("page"));
+        assertEquals(0.5f, segment.metadata().getFloat("weight"));
+        assertEquals(0.25, segment.metadata().getDouble("score"));
+        assertEquals(new UUID(0, 299), segment.metadata().getUUID("id"));
+        assertArrayEquals(new float[]{299, -299, 0.5f}, chunks.get(1).embeddings().get(43).vector());
+    }
+
+    @Test
+    void emptySnapshotHasNoChunks() throws Exception {
+        assertTrue(readAll(snapshot(0)).isEmpty());
+    }
+
+    @Test
+    void detectsCorruptedChunk() throws Exception {
+        var bytes = snapshot(10);
+        bytes[bytes.length - 20] ^= 0x5A;
+
+        assertThrows(IOException.class, () -> readAll(bytes));
+    }
+
+    @Test
+    void detectsCorruptedLengthsBeforeAllocating() throws Exception {
+        // Magic, version, model name, dimension and fingerprint come first, then the first chunk header
+        int chunkHeader = 4 + 4 + 4 + HEADER.embeddingModel().length() + 4 + 4 + HEADER.fingerprint().length();
+        for (int offset : new int[]{8, chunkHeader, chunkHeader + 4, chunkHeader + 8}) {
+            var bytes = snapshot(10);
+            ByteBuffer.wrap(bytes).putInt(offset, offset == chunkHeader ? -1 : Integer.MAX_VALUE);
+
+            assertThrows(IOException.class, () -> readAll(bytes), "corrupt int at " + offset);
+        }
+    }
+
+    @Test
+    void detectsCorruptedRecordCount() throws Exception {
+        int chunkHeader = 4 + 4 + 4 + HEADER.embeddingModel().length() + 4 + 4 + HEADER.fingerprint().length();
+        var bytes = snapshot(10);
+        ByteBuffer.wrap(bytes).putInt(chunkHeader, 9);
+
+        assertThrows(IOException.class, () -> readAll(bytes));
+    }
+
+    @Test
+    void detectsTruncatedSnapshot() throws Exception {
+        var bytes = snapshot(10);
+
+        assertThrows(IOException.class, () -> readAll(Arrays.copyOf(bytes, bytes.length - 12)));
+    }
+
+    @Test
+    void rejectsVectorsOfWrongDimension() throws Exception {
+        try (var writer = new IndexSnapshot.Writer(new ByteArrayOutputStream(), HEADER)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> writer.write(Embedding.from(new float[]{1, 2}), TextSegment.from("text")));
+        }
+    }
+
+    @Test
+    void abortDoesNotFlushToFailingStream() throws Exception {
+        var failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("No space left on device");
+            }
+        };
+        var writer = new IndexSnapshot.Writer(failing, HEADER);
+        writer.write(Embedding.from(new float[]{1, 2, 3}), TextSegment.from("text"));
+
+        assertDoesNotThrow(writer::abort);
+        assertDoesNotThrow(writer::close);
+    }
+
+    @Test
+    void rejectsOtherFiles() {
+        assertThrows(IOException.class,
+                () -> new IndexSnapshot.Reader(new ByteArrayInputStream("not a snapshot".getBytes())));
+    }
+}
@@ -0,0 +1,80 @@
+import com.vaadin.demo.index.IndexSnapshot;
+import com.vaadin.demo.index.SnapshotStore;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class SnapshotStoreTest {
+
+    private static final IndexSnapshot.Header HEADER = new IndexSnapshot.Header("model", 2, "fingerprint");
+
+    @TempDir
+    Path directory;
+
+    @SuppressWarnings("unchecked")
+    private static EmbeddingStore<TextSegment> store() {
+        return Mockito.mock(EmbeddingStore.class);
+    }
+
+    private void writeSnapshot(int segments) throws Exception {
+        var snapshots = new SnapshotStore(directory.toString());
+        try (var pending = snapshots.create("documents", HEADER)) {
+            for (int i = 0; i < segments; i++) {
+                pending.writer().write(Embedding.from(new float[]{i, i}), TextSegment.from("segment " + i));
+            }
+            pending.commit();
+        }
+    }
+
+    @Test
+    void restoresCompatibleSnapshotIntoStore() throws Exception {
+        writeSnapshot(3);
+        var store = store();
+
+        long restored = new SnapshotStore(directory.toString()).restore("documents", HEADER, store);
+
+        assertEquals(3, restored);
+        Mockito.verify(store).addAll(Mockito.<List<Embedding>>argThat(e -> e.size() == 3),
+                Mockito.<List<TextSegment>>argThat(s -> s.get(2).text().equals("segment 2")));
+    }
+
+    @Test
+    void ignoresSnapshotOfOtherModelOrDocuments() throws Exception {
+        writeSnapshot(1);
+        var snapshots = new SnapshotStore(directory.toString());
+        var store = store();
+
+        assertEquals(-1, snapshots.restore("documents", new IndexSnapshot.Header("other", 2, "fingerprint"), store));
+        assertEquals(-1, snapshots.restore("documents", new IndexSnapshot.Header("model", 2, "changed"), store));
+        assertEquals(-1, snapshots.restore("missing", HEADER, store));
+        Mockito.verifyNoInteractions(store);
+    }
+
+    @Test
+    void discardsUncommittedSnapshot() throws Exception {
+        var snapshots = new SnapshotStore(directory.toString());
+        try (var pending = snapshots.create("documents", HEADER)) {
+            pending.writer().write(Embedding.from(new float[]{1, 1}), TextSegment.from("segment"));
+        }
+
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void disabledWithoutLocation() throws Exception {
+        var snapshots = new SnapshotStore("");
+
+        assertFalse(snapshots.isEnabled());
+        assertEquals(-1, snapshots.restore("documents", HEADER, store()));
+    }
+}
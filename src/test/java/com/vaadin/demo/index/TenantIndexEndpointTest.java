@@ -0,0 +1,83 @@
+import com.vaadin.demo.index.TenantIndexEndpoint;
+import com.vaadin.demo.index.TenantIndexes;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class TenantIndexEndpointTest {
+
+    private static TenantIndexes tenantIndexes() {
+        TenantIndexes tenantIndexes = Mockito.mock(TenantIndexes.class);
+        Mockito.when(tenantIndexes.tenants()).thenReturn(List.of("default", "team"));
+        Mockito.when(tenantIndexes.collectionName("default")).thenReturn("documents");
+        Mockito.when(tenantIndexes.collectionName("team")).thenReturn("documents-team");
+        return tenantIndexes;
+    }
+
+    private static Map<String, Object> awaitStatus(TenantIndexEndpoint endpoint, String tenant, String status)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!status.equals(endpoint.status(tenant).get("status")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return endpoint.status(tenant);
+    }
+
+    @Test
+    void listsCollectionsOfTenants() {
+        try (var endpoint = new TenantIndexEndpoint(tenantIndexes())) {
+            assertEquals(Map.of("default", "documents", "team", "documents-team"), endpoint.collections());
+            assertEquals("idle", endpoint.status("team").get("status"));
+        }
+    }
+
+    @Test
+    void reindexesInBackground() throws Exception {
+        var tenantIndexes = tenantIndexes();
+        var release = new CountDownLatch(1);
+        Mockito.when(tenantIndexes.reindex("team")).thenAnswer(invocation -> {
+            release.await();
+            return 42L;
+        });
+
+        try (var endpoint = new TenantIndexEndpoint(tenantIndexes)) {
+            assertEquals("queued", endpoint.reindex("team").get("status"));
+            assertEquals("running", awaitStatus(endpoint, "team", "running").get("status"));
+            // A second request while running does not queue another re-index
+            assertEquals("running", endpoint.reindex("team").get("status"));
+
+            release.countDown();
+            var done = awaitStatus(endpoint, "team", "done");
+
+            assertEquals("done", done.get("status"));
+            assertEquals(42L, done.get("segments"));
+            Mockito.verify(tenantIndexes, Mockito.times(1)).reindex("team");
+        }
+    }
+
+    @Test
+    void reportsFailedReindex() throws Exception {
+        var tenantIndexes = tenantIndexes();
+        Mockito.when(tenantIndexes.reindex("team")).thenThrow(new IllegalStateException("Qdrant request failed"));
+
+        try (var endpoint = new TenantIndexEndpoint(tenantIndexes)) {
+            endpoint.reindex("team");
+            var failed = awaitStatus(endpoint, "team", "failed");
+
+            assertEquals("failed", failed.get("status"));
+            assertEquals("Qdrant request failed", failed.get("error"));
+        }
+    }
+
+    @Test
+    void rejectsUnknownTenant() {
+        try (var endpoint = new TenantIndexEndpoint(tenantIndexes())) {
+            assertThrows(IllegalArgumentException.class, () -> endpoint.reindex("missing"));
+        }
+    }
+}
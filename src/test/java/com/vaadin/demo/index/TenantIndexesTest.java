@@ -0,0 +1,169 @@
+import com.vaadin.demo.config.AIDocsProperties;
+import com.google.common.util.concurrent.Futures;
+import com.vaadin.demo.index.TenantIndexes;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.Collections.AliasDescription;
+import io.qdrant.client.grpc.Collections.AliasOperations;
+import io.qdrant.client.grpc.Collections.VectorParams;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class TenantIndexesTest {
+
+    @TempDir
+    Path docs;
+
+    private TenantIndexes tenantIndexes() {
+        AIDocsProperties props = new AIDocsProperties();
+        props.setLocation(docs.toString());
+        return new TenantIndexes(Mockito.mock(QdrantClient.class), Mockito.mock(EmbeddingModel.class), props);
+    }
+
+    @Test
+    void subDirectoriesAreTenants() throws Exception {
+        Files.createDirectory(docs.resolve("team-b"));
+        Files.createDirectory(docs.resolve("Team A"));
+        Files.createDirectory(docs.resolve(".hidden"));
+        Files.writeString(docs.resolve("readme.md"), "shared");
+
+        TenantIndexes tenantIndexes = tenantIndexes();
+
+        assertEquals(List.of("default", "Team A", "team-b"), tenantIndexes.tenants());
+        assertEquals("documents", tenantIndexes.collectionName("default"));
+        assertEquals("documents-Team_20A", tenantIndexes.collectionName("Team A"));
+        assertEquals("documents-team-b", tenantIndexes.collectionName("team-b"));
+    }
+
+    @Test
+    void collectionNamesAreDistinctPerTenant() {
+        TenantIndexes tenantIndexes = tenantIndexes();
+
+        var names = List.of("Team A", "team_a", "team.a", "team a", "team_20a", "équipe").stream()
+                .map(tenantIndexes::collectionName)
+                .toList();
+
+        assertEquals(names.size(), names.stream().distinct().count());
+        assertEquals("documents-team_5fa", tenantIndexes.collectionName("team_a"));
+        assertEquals("documents-_c3_a9quipe", tenantIndexes.collectionName("équipe"));
+    }
+
+    @Test
+    void storesAreCachedPerTenant() {
+        TenantIndexes tenantIndexes = tenantIndexes();
+
+        assertSame(tenantIndexes.store("default"), tenantIndexes.store("default"));
+        assertNotSame(tenantIndexes.store("default"), tenantIndexes.store("other"));
+    }
+
+    @Test
+    void reindexRejectsUnknownTenant() {
+        assertThrows(IllegalArgumentException.class, () -> tenantIndexes().reindex("missing"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reindexSwitchesAliasToNewCollection() {
+        QdrantClient client = Mockito.mock(QdrantClient.class, Mockito.RETURNS_MOCKS);
+        Mockito.when(client.listAliasesAsync()).thenReturn(Futures.immediateFuture(List.of(
+                AliasDescription.newBuilder().setAliasName("documents").setCollectionName("documents_v1").build())));
+        String filling = "documents_v" + (System.currentTimeMillis() - 60_000) + "_0123456789abcdef";
+        Mockito.when(client.listCollectionsAsync()).thenReturn(Futures.immediateFuture(
+                List.of("documents_v1", "documents_v0", "documents-team", filling)));
+        EmbeddingModel embeddingModel = Mockito.mock(EmbeddingModel.class);
+        Mockito.when(embeddingModel.embed("test string")).thenReturn(Response.from(Embedding.from(new float[]{1, 0})));
+        AIDocsProperties props = new AIDocsProperties();
+        props.setLocation(docs.toString());
+
+        assertEquals(0, new TenantIndexes(client, embeddingModel, props).reindex("default"));
+
+        ArgumentCaptor<List<AliasOperations>> operations = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(client).updateAliasesAsync(operations.capture());
+        assertEquals("documents", operations.getValue().get(0).getDeleteAlias().getAliasName());
+        var created = operations.getValue().get(1).getCreateAlias();
+        assertEquals("documents", created.getAliasName());
+        assertTrue(created.getCollectionName().startsWith("documents_v"));
+        // The abandoned collection is dropped before, the replaced one after the switch
+        Mockito.verify(client).deleteCollectionAsync("documents_v0");
+        Mockito.verify(client).deleteCollectionAsync("documents_v1");
+        Mockito.verify(client, Mockito.never()).deleteCollectionAsync("documents-team");
+        // Possibly still being filled by another replica
+        Mockito.verify(client, Mockito.never()).deleteCollectionAsync(filling);
+        Mockito.verify(client, Mockito.never()).deleteCollectionAsync(created.getCollectionName());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reindexAllSkipsTenantsAlreadyIndexed() {
+        QdrantClient client = Mockito.mock(QdrantClient.class, Mockito.RETURNS_MOCKS);
+        Mockito.when(client.listAliasesAsync()).thenReturn(Futures.immediateFuture(List.of()));
+        Mockito.when(client.listCollectionsAsync()).thenReturn(Futures.immediateFuture(List.of()));
+        Mockito.when(client.countAsync(Mockito.anyString())).thenReturn(Futures.immediateFuture(5L));
+        Mockito.when(client.collectionExistsAsync(Mockito.anyString())).thenReturn(Futures.immediateFuture(false));
+        EmbeddingModel embeddingModel = Mockito.mock(EmbeddingModel.class);
+        Mockito.when(embeddingModel.embed("test string")).thenReturn(Response.from(Embedding.from(new float[]{1, 0})));
+        AIDocsProperties props = new AIDocsProperties();
+        props.setLocation(docs.toString());
+        var tenantIndexes = new TenantIndexes(client, embeddingModel, props);
+
+        tenantIndexes.reindexAll();
+        ArgumentCaptor<List<AliasOperations>> operations = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(client).updateAliasesAsync(operations.capture());
+        var built = operations.getValue().get(0).getCreateAlias().getCollectionName();
+        // As seen by a replica starting later
+        Mockito.when(client.listAliasesAsync()).thenReturn(Futures.immediateFuture(List.of(
+                AliasDescription.newBuilder().setAliasName("documents").setCollectionName(built).build())));
+
+        tenantIndexes.reindexAll();
+
+        Mockito.verify(client, Mockito.times(1))
+                .createCollectionAsync(Mockito.anyString(), Mockito.any(VectorParams.class));
+        Mockito.verify(client).countAsync(built);
+    }
+
+    @Test
+    void failedImportLeavesNoPartialSnapshot(@TempDir Path snapshots) throws Exception {
+        Files.writeString(docs.resolve("readme.txt"), "Some text to embed.");
+        QdrantClient client = Mockito.mock(QdrantClient.class, Mockito.RETURNS_MOCKS);
+        Mockito.when(client.listAliasesAsync()).thenReturn(Futures.immediateFuture(List.of()));
+        Mockito.when(client.listCollectionsAsync()).thenReturn(Futures.immediateFuture(List.of()));
+        EmbeddingModel embeddingModel = Mockito.mock(EmbeddingModel.class);
+        Mockito.when(embeddingModel.embed("test string")).thenReturn(Response.from(Embedding.from(new float[]{1, 0})));
+        Mockito.when(embeddingModel.embedAll(Mockito.anyList())).thenThrow(new IllegalStateException("Ollama timeout"));
+        AIDocsProperties props = new AIDocsProperties();
+        props.setLocation(docs.toString());
+        props.getIndex().setSnapshotLocation(snapshots.toString());
+
+        var tenantIndexes = new TenantIndexes(client, embeddingModel, props);
+
+        assertThrows(IllegalStateException.class, () -> tenantIndexes.reindex("default"));
+        try (var files = Files.list(snapshots)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void listsFoldersAndExtensionsOfTenant() throws Exception {
+        Files.createDirectories(docs.resolve("team/guides/setup"));
+        Files.writeString(docs.resolve("team/intro.md"), "intro");
+        Files.writeString(docs.resolve("team/guides/setup/install.PDF"), "setup");
+        Files.writeString(docs.resolve("team/guides/NOTES"), "notes");
+        Files.writeString(docs.resolve("top.txt"), "top");
+
+        TenantIndexes tenantIndexes = tenantIndexes();
+
+        assertEquals(List.of("guides", "guides/setup"), tenantIndexes.folders("team"));
+        assertEquals(List.of("md", "pdf"), tenantIndexes.extensions("team"));
+        assertEquals(List.of(), tenantIndexes.folders("default"));
+        assertEquals(List.of("txt"), tenantIndexes.extensions("default"));
+    }
+}
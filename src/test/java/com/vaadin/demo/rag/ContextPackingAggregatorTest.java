@@ -0,0 +1,114 @@
+import com.vaadin.demo.rag.ContextPackingAggregator;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+
+class ContextPackingAggregatorTest {
+
+    private static Content content(String text, String file, int index, double score) {
+        var metadata = new Metadata()
+                .put("file_name", file)
+                .put("absolute_directory_path", "/docs")
+                .put("index", String.valueOf(index));
+        return Content.from(TextSegment.from(text, metadata), Map.of(ContentMetadata.SCORE, score));
+    }
+
+    private static List<Content> aggregate(ContextPackingAggregator aggregator, Content... contents) {
+        return aggregator.aggregate(Map.of(Query.from("question"), List.of(List.of(contents))));
+    }
+
+    @Test
+    void removesNearDuplicates() {
+        var registry = new SimpleMeterRegistry();
+        var aggregator = new ContextPackingAggregator(1000, 0.8, registry);
+
+        var result = aggregate(aggregator,
+                content("The quick brown fox jumps over the lazy dog near the river bank.", "a.md", 0, 0.9),
+                content("The quick brown fox jumps over the lazy dog near the river bank!", "b.md", 4, 0.8));
+
+        assertEquals(1, result.size());
+        assertEquals(0.9, result.get(0).metadata().get(ContentMetadata.SCORE));
+        assertEquals(1.0, registry.get("rag.context.segments.removed").tag("reason", "duplicate").counter().count());
+    }
+
+    @Test
+    void mergesAdjacentChunksOfTheSameFile() {
+        var registry = new SimpleMeterRegistry();
+        var aggregator = new ContextPackingAggregator(1000, 0.9, registry);
+
+        var result = aggregate(aggregator,
+                content("Second part continues here and ends the section.", "a.md", 1, 0.7),
+                content("First part of the section. Second part continues here", "a.md", 0, 0.8),
+                content("Unrelated text from another document entirely.", "b.md", 1, 0.5));
+
+        assertEquals(2, result.size());
+        assertEquals("First part of the section. Second part continues here and ends the section.",
+                result.get(0).textSegment().text());
+        assertEquals(0.8, result.get(0).metadata().get(ContentMetadata.SCORE));
+        assertEquals(1.0, registry.get("rag.context.segments.removed").tag("reason", "merged").counter().count());
+    }
+
+    @Test
+    void packsWithinTokenBudgetByScore() {
+        var registry = new SimpleMeterRegistry();
+        var aggregator = new ContextPackingAggregator(10, 0.9, registry);
+
+        var result = aggregate(aggregator,
+                content("x".repeat(24), "a.md", 0, 0.5),
+                content("y".repeat(24), "b.md", 0, 0.9),
+                content("z".repeat(100), "c.md", 0, 0.7));
+
+        assertEquals(1, result.size());
+        assertEquals("y".repeat(24), result.get(0).textSegment().text());
+        assertEquals(2.0, registry.get("rag.context.segments.removed").tag("reason", "over_budget").counter().count());
+        assertEquals(31.0, registry.get("rag.context.tokens.saved").counter().count());
+    }
+
+    @Test
+    void mergedNeighbourDoesNotCrowdOutBetterChunks() {
+        var registry = new SimpleMeterRegistry();
+        var aggregator = new ContextPackingAggregator(20, 0.9, registry);
+
+        var result = aggregate(aggregator,
+                content("a".repeat(40), "a.md", 0, 0.9),
+                content("c".repeat(40), "a.md", 1, 0.2),
+                content("b".repeat(40), "b.md", 0, 0.85));
+
+        assertEquals(List.of("a".repeat(40), "b".repeat(40)),
+                result.stream().map(c -> c.textSegment().text()).toList());
+        assertEquals(1.0, registry.get("rag.context.segments.removed").tag("reason", "over_budget").counter().count());
+        assertEquals(0.0, registry.get("rag.context.segments.removed").tag("reason", "merged").counter().count());
+    }
+
+    @Test
+    void chargesOnlyTheTokensAMergeAdds() {
+        var aggregator = new ContextPackingAggregator(15, 0.9, new SimpleMeterRegistry());
+        var overlap = "shared overlap text!";
+
+        var result = aggregate(aggregator,
+                content("a".repeat(20) + overlap, "a.md", 0, 0.9),
+                content(overlap + "c".repeat(20), "a.md", 1, 0.8));
+
+        assertEquals(1, result.size());
+        assertEquals("a".repeat(20) + overlap + "c".repeat(20), result.get(0).textSegment().text());
+    }
+
+    @Test
+    void truncatesBestSegmentWhenNothingFits() {
+        var aggregator = new ContextPackingAggregator(5, 0.9, new SimpleMeterRegistry());
+
+        var result = aggregator.aggregate(Map.of(Query.from("question"),
+                List.of(List.of(Content.from("w".repeat(100))))));
+
+        assertEquals(1, result.size());
+        assertEquals(20, result.get(0).textSegment().text().length());
+    }
+}
@@ -0,0 +1,144 @@
+import com.vaadin.demo.rag.ExpandingContentRetriever;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class ExpandingContentRetrieverTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static Content content(String text, double score) {
+        return Content.from(TextSegment.from(text), Map.of(ContentMetadata.SCORE, score));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void mergesResultsOfAllVariants() {
+        ContentRetriever delegate = query -> switch (query.text()) {
+            case "original" -> List.of(content("a", 0.6), content("b", 0.5));
+            case "variant" -> List.of(content("b", 0.9), content("c", 0.4));
+            default -> List.of();
+        };
+        var retriever = new ExpandingContentRetriever(delegate,
+                query -> List.of(query, Query.from("variant")), Duration.ofSeconds(5), executor, registry);
+
+        var result = retriever.retrieve(Query.from("original"));
+
+        assertEquals(List.of("b", "a", "c"), result.stream().map(c -> c.textSegment().text()).toList());
+        assertEquals(0.9, result.get(0).metadata().get(ContentMetadata.SCORE));
+        assertEquals(1.0, registry.get("rag.query.expansion.variants").tag("outcome", "searched").counter().count());
+    }
+
+    @Test
+    void dropsVariantsMissingTheDeadline() {
+        ContentRetriever delegate = query -> {
+            if (query.text().equals("slow")) {
+                sleep(2000);
+            }
+            return List.of(content(query.text(), 0.5));
+        };
+        var retriever = new ExpandingContentRetriever(delegate,
+                query -> List.of(Query.from("slow")), Duration.ofMillis(100), executor, registry);
+
+        long start = System.nanoTime();
+        var result = retriever.retrieve(Query.from("original"));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1000);
+        assertEquals(List.of("original"), result.stream().map(c -> c.textSegment().text()).toList());
+        assertEquals(1.0, registry.get("rag.query.expansion.variants").tag("outcome", "deadline").counter().count());
+    }
+
+    @Test
+    void slowTransformerOnlyCostsTheDeadline() {
+        var retriever = new ExpandingContentRetriever(query -> List.of(content(query.text(), 0.5)),
+                query -> {
+                    sleep(2000);
+                    return List.of(Query.from("late"));
+                }, Duration.ofMillis(100), executor, registry);
+
+        long start = System.nanoTime();
+        var result = retriever.retrieve(Query.from("original"));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1000);
+        assertEquals(1, result.size());
+        assertEquals(1.0, registry.get("rag.query.expansion.transforms").tag("outcome", "timeout").counter().count());
+    }
+
+    @Test
+    void saturatedExecutorDoesNotDelayOriginal() {
+        Executor discarding = command -> {
+        };
+        var retriever = new ExpandingContentRetriever(query -> List.of(content(query.text(), 0.5)),
+                query -> List.of(Query.from("variant")), Duration.ofMillis(100), discarding, registry);
+
+        long start = System.nanoTime();
+        var result = retriever.retrieve(Query.from("original"));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1000);
+        assertEquals(List.of("original"), result.stream().map(c -> c.textSegment().text()).toList());
+    }
+
+    @Test
+    void failingOriginalSearchIsRethrown() {
+        var retriever = new ExpandingContentRetriever(query -> {
+            throw new IllegalStateException("store unavailable");
+        }, query -> List.of(), Duration.ofSeconds(1), executor, registry);
+
+        assertThrows(IllegalStateException.class, () -> retriever.retrieve(Query.from("original")));
+    }
+
+    @Test
+    void failingTransformerFallsBackToOriginal() {
+        var retriever = new ExpandingContentRetriever(query -> List.of(content(query.text(), 0.5)),
+                query -> {
+                    throw new IllegalStateException("model unavailable");
+                }, Duration.ofSeconds(1), executor, registry);
+
+        assertEquals(1, retriever.retrieve(Query.from("original")).size());
+        assertEquals(1.0, registry.get("rag.query.expansion.transforms").tag("outcome", "failed").counter().count());
+    }
+
+    @Test
+    void failingVariantSearchIsNotCountedAsMissingTheDeadline() {
+        ContentRetriever delegate = query -> {
+            if (query.text().equals("broken")) {
+                throw new IllegalStateException("store unavailable");
+            }
+            return List.of(content(query.text(), 0.5));
+        };
+        var retriever = new ExpandingContentRetriever(delegate,
+                query -> List.of(Query.from("broken")), Duration.ofSeconds(5), executor, registry);
+
+        var result = retriever.retrieve(Query.from("original"));
+
+        assertEquals(List.of("original"), result.stream().map(c -> c.textSegment().text()).toList());
+        assertEquals(1.0, registry.get("rag.query.expansion.variants").tag("outcome", "failed").counter().count());
+        assertEquals(0.0, registry.get("rag.query.expansion.variants").tag("outcome", "deadline").counter().count());
+    }
+}
@@ -0,0 +1,51 @@
+import com.vaadin.demo.rag.KeywordQueryTransformer;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.rag.query.Metadata;
+import dev.langchain4j.rag.query.Query;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+class KeywordQueryTransformerTest {
+
+    private static Query query(String text, List<ChatMessage> history) {
+        return Query.from(text, Metadata.from(UserMessage.from(text), "chat", history));
+    }
+
+    private static List<String> texts(KeywordQueryTransformer transformer, Query query) {
+        return transformer.transform(query).stream().map(Query::text).toList();
+    }
+
+    @Test
+    void addsKeywordVariant() {
+        var transformer = new KeywordQueryTransformer(3);
+
+        assertEquals(List.of("How do I configure the Qdrant port?", "configure qdrant port"),
+                texts(transformer, query("How do I configure the Qdrant port?", List.of())));
+    }
+
+    @Test
+    void combinesShortFollowUpWithPreviousQuestion() {
+        var transformer = new KeywordQueryTransformer(3);
+        List<ChatMessage> history = List.of(
+                UserMessage.from("How is Qdrant deployed?\n\nAnswer using the following information:\nKubernetes"),
+                AiMessage.from("With a StatefulSet."));
+
+        assertEquals(List.of("and the port?", "port", "port qdrant deployed"),
+                texts(transformer, query("and the port?", history)));
+    }
+
+    @Test
+    void limitsNumberOfVariants() {
+        var transformer = new KeywordQueryTransformer(1);
+        List<ChatMessage> history = List.of(UserMessage.from("Qdrant deployment"));
+
+        var queries = transformer.transform(query("what about the port?", history));
+
+        assertEquals(2, queries.size());
+        assertTrue(queries.stream().allMatch(q -> "chat".equals(q.metadata().chatMemoryId())));
+    }
+}
@@ -0,0 +1,74 @@
+import com.vaadin.demo.index.DocumentMetadata;
+import com.vaadin.demo.rag.ChatSessions;
+import com.vaadin.demo.rag.RetrievalFilter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+class RetrievalFilterTest {
+
+    private static Metadata segment(String folder, String extension, LocalDate modified) {
+        var metadata = new Metadata()
+                .put("folder", folder)
+                .put("extension", extension)
+                .put("last_modified", modified.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        var ancestors = DocumentMetadata.ancestorsOf(folder);
+        for (int depth = 1; depth <= Math.min(ancestors.size(), DocumentMetadata.MAX_FOLDER_DEPTH); depth++) {
+            metadata.put(DocumentMetadata.folderAtDepth(depth), ancestors.get(depth - 1));
+        }
+        return metadata;
+    }
+
+    @Test
+    void emptyFilterRestrictsNothing() {
+        assertNull(RetrievalFilter.NONE.toFilter());
+    }
+
+    @Test
+    void combinesAllRestrictions() {
+        Filter filter = RetrievalFilter.NONE
+                .withFolder("guides")
+                .withExtension("md")
+                .withModifiedAfter(LocalDate.of(2024, 1, 1))
+                .withModifiedBefore(LocalDate.of(2024, 1, 31))
+                .toFilter();
+
+        assertTrue(filter.test(segment("guides", "md", LocalDate.of(2024, 1, 31))));
+        assertFalse(filter.test(segment("guides", "pdf", LocalDate.of(2024, 1, 15))));
+        assertFalse(filter.test(segment("other", "md", LocalDate.of(2024, 1, 15))));
+        assertFalse(filter.test(segment("guides", "md", LocalDate.of(2023, 12, 31))));
+        assertFalse(filter.test(segment("guides", "md", LocalDate.of(2024, 2, 1))));
+    }
+
+    @Test
+    void folderIncludesSubFolders() {
+        Filter filter = RetrievalFilter.NONE.withFolder("guides").toFilter();
+        LocalDate day = LocalDate.of(2024, 1, 1);
+
+        assertTrue(filter.test(segment("guides", "md", day)));
+        assertTrue(filter.test(segment("guides/setup", "md", day)));
+        assertFalse(filter.test(segment("guides-old", "md", day)));
+        assertFalse(filter.test(segment("other/guides", "md", day)));
+        assertFalse(filter.test(segment("/", "md", day)));
+        assertTrue(RetrievalFilter.NONE.withFolder("guides/setup").toFilter()
+                .test(segment("guides/setup/linux", "md", day)));
+        assertNull(RetrievalFilter.NONE.withFolder("/").toFilter());
+    }
+
+    @Test
+    void filterIsKeptPerChat() {
+        ChatSessions sessions = new ChatSessions("default");
+        RetrievalFilter filter = RetrievalFilter.NONE.withExtension("pdf");
+        sessions.setFilter("chat", filter);
+
+        assertEquals(filter, sessions.filterOf("chat"));
+        assertEquals(RetrievalFilter.NONE, sessions.filterOf("other"));
+        assertEquals(RetrievalFilter.NONE, sessions.filterOf(null));
+        sessions.end("chat");
+        assertEquals(RetrievalFilter.NONE, sessions.filterOf("chat"));
+    }
+}
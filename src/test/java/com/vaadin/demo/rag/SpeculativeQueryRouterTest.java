@@ -0,0 +1,241 @@
+import com.vaadin.demo.rag.ChatSessions;
+import com.vaadin.demo.rag.RetrievalFilter;
+import com.vaadin.demo.rag.SpeculativeQueryRouter;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Metadata;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SpeculativeQueryRouterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ChatSessions sessions = new ChatSessions("default");
+    private final AtomicInteger retrievals = new AtomicInteger();
+    private final ContentRetriever retriever = query -> {
+        retrievals.incrementAndGet();
+        return List.of(Content.from("about " + query.text()));
+    };
+    private final SpeculativeQueryRouter router =
+            new SpeculativeQueryRouter(query -> List.of(retriever), sessions, 4, 0.6, registry);
+
+    @AfterEach
+    void close() {
+        router.close();
+    }
+
+    private static Query query(String chatId, String text) {
+        return Query.from(text, Metadata.from(UserMessage.from(text), chatId, List.of()));
+    }
+
+    private List<Content> submit(String chatId, String text) {
+        var routed = router.route(query(chatId, text));
+        assertEquals(1, routed.size());
+        return routed.iterator().next().retrieve(query(chatId, text));
+    }
+
+    private double lookups(String outcome) {
+        return registry.get("rag.speculative.lookups").tag("outcome", outcome).counter().count();
+    }
+
+    private void awaitRetrievals(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (retrievals.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, retrievals.get());
+    }
+
+    @Test
+    void reusesPrefetchOfTheSameQuestion() throws InterruptedException {
+        router.prefetch("chat", "How do I configure  Qdrant?");
+        awaitRetrievals(1);
+
+        var result = submit("chat", "how do I configure qdrant");
+
+        assertEquals("about How do I configure  Qdrant?", result.get(0).textSegment().text());
+        assertEquals(1, retrievals.get());
+        assertEquals(1.0, lookups("hit"));
+    }
+
+    @Test
+    void waitsForRunningPrefetchOfTheSameQuestion() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var calls = new AtomicInteger();
+        try (var slowRouter = new SpeculativeQueryRouter(query -> List.of(q -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of(Content.from("prefetched " + q.text()));
+        }), sessions, 4, 0.6, registry)) {
+            slowRouter.prefetch("chat", "configure qdrant");
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            var query = query("chat", "configure qdrant");
+            var submitted = new FutureTask<>(() -> slowRouter.route(query).iterator().next().retrieve(query));
+            var submitter = new Thread(submitted);
+            submitter.start();
+            // Only finish the prefetch once the submit is waiting for it
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (submitter.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            var result = submitted.get(5, TimeUnit.SECONDS);
+            assertEquals("prefetched configure qdrant", result.get(0).textSegment().text());
+            assertEquals(1, calls.get());
+            assertEquals(1.0, lookups("hit"));
+        }
+    }
+
+    @Test
+    void reusesCompletedPrefetchOfSimilarQuestion() throws InterruptedException {
+        router.prefetch("chat", "configure qdrant collection");
+        awaitRetrievals(1);
+
+        var result = submit("chat", "configure the qdrant collection name");
+
+        assertEquals("about configure qdrant collection", result.get(0).textSegment().text());
+        assertEquals(1, retrievals.get());
+        assertEquals(1.0, lookups("hit"));
+    }
+
+    @Test
+    void retrievesAgainForDifferentQuestion() throws InterruptedException {
+        router.prefetch("chat", "configure qdrant collection");
+        awaitRetrievals(1);
+
+        var result = submit("chat", "which embedding model is used");
+
+        assertEquals("about which embedding model is used", result.get(0).textSegment().text());
+        assertEquals(2, retrievals.get());
+        assertEquals(1.0, lookups("miss"));
+    }
+
+    @Test
+    void ignoresPrefetchOfOtherTenantOrFilter() throws InterruptedException {
+        router.prefetch("chat", "configure qdrant");
+        awaitRetrievals(1);
+        sessions.setTenant("chat", "team-a");
+        submit("chat", "configure qdrant");
+
+        router.prefetch("chat", "configure qdrant");
+        awaitRetrievals(3);
+        sessions.setFilter("chat", RetrievalFilter.NONE.withFolder("guides"));
+        submit("chat", "configure qdrant");
+
+        assertEquals(4, retrievals.get());
+        assertEquals(2.0, lookups("miss"));
+    }
+
+    @Test
+    void cancelsStalePrefetch() throws InterruptedException {
+        var blocked = new CountDownLatch(1);
+        var started = new CountDownLatch(2);
+        try (var slowRouter = new SpeculativeQueryRouter(query -> List.of(q -> {
+            started.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of(Content.from(q.text()));
+        }), sessions, 4, 0.6, registry)) {
+            // Occupy both prefetch threads with other chats so the next prefetch stays queued
+            slowRouter.prefetch("other-1", "first question");
+            slowRouter.prefetch("other-2", "second question");
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            slowRouter.prefetch("chat", "index documents");
+            slowRouter.prefetch("chat", "index documents into qdrant");
+            blocked.countDown();
+
+            assertEquals(1.0, registry.get("rag.speculative.prefetches").tag("outcome", "cancelled").counter().count());
+            assertEquals(4.0, registry.get("rag.speculative.prefetches").tag("outcome", "started").counter().count());
+        }
+    }
+
+    @Test
+    void endForgetsPrefetchedResults() throws InterruptedException {
+        router.prefetch("chat", "configure qdrant");
+        awaitRetrievals(1);
+        router.end("chat");
+
+        submit("chat", "configure qdrant");
+
+        assertEquals(2, retrievals.get());
+        assertEquals(1.0, lookups("disabled"));
+        assertEquals(0.0, lookups("miss"));
+    }
+
+    @Test
+    void doesNotWaitLongForRunningPrefetch() {
+        var release = new CountDownLatch(1);
+        try (var slowRouter = new SpeculativeQueryRouter(query -> List.of(q -> {
+            if (Thread.currentThread().getName().startsWith("prefetch-")) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return List.of(Content.from(q.text()));
+        }), sessions, 4, 0.6, registry)) {
+            slowRouter.prefetch("chat", "configure qdrant");
+
+            long start = System.nanoTime();
+            var query = query("chat", "configure qdrant");
+            var result = slowRouter.route(query).iterator().next().retrieve(query);
+
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+            assertEquals("configure qdrant", result.get(0).textSegment().text());
+            assertEquals(1.0, lookups("miss"));
+            release.countDown();
+        }
+    }
+
+    @Test
+    void disabledWithoutCache() {
+        try (var disabled = new SpeculativeQueryRouter(query -> List.of(retriever), sessions, 0, 0.6, registry)) {
+            assertFalse(disabled.isEnabled());
+            disabled.prefetch("chat", "configure qdrant collection");
+
+            assertTrue(router.isEnabled());
+            assertEquals(0.0, registry.get("rag.speculative.prefetches").tag("outcome", "started").counter().count());
+        }
+    }
+
+    @Test
+    void countsQuestionsOfChatsWithoutPrefetchSeparately() {
+        submit("chat", "configure qdrant");
+
+        assertEquals(1, retrievals.get());
+        assertEquals(1.0, lookups("disabled"));
+        assertEquals(0.0, lookups("miss"));
+    }
+
+    @Test
+    void skipsQuestionsWithTooFewKeywords() {
+        router.prefetch("chat", "   ");
+        router.prefetch("chat", "how do I");
+        router.prefetch("chat", "how do I configure");
+
+        assertEquals(0.0, registry.get("rag.speculative.prefetches").tag("outcome", "started").counter().count());
+    }
+}
@@ -0,0 +1,48 @@
+import com.vaadin.demo.rag.ChatSessions;
+import com.vaadin.demo.rag.TenantQueryRouter;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Metadata;
+import dev.langchain4j.rag.query.Query;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class TenantQueryRouterTest {
+
+    private static Query query(String chatId) {
+        return Query.from("question", Metadata.from(UserMessage.from("question"), chatId, List.of()));
+    }
+
+    @Test
+    void routesToRetrieverOfChatTenant() {
+        ChatSessions sessions = new ChatSessions("default");
+        sessions.setTenant("chat-a", "team-a");
+        List<String> created = new ArrayList<>();
+        TenantQueryRouter router = new TenantQueryRouter(sessions, tenant -> {
+            created.add(tenant);
+            return Mockito.mock(ContentRetriever.class);
+        });
+
+        var teamA = router.route(query("chat-a"));
+        var fallback = router.route(query("chat-b"));
+
+        assertEquals(1, teamA.size());
+        assertEquals(teamA, router.route(query("chat-a")));
+        assertNotEquals(teamA, fallback);
+        assertEquals(List.of("team-a", "default"), created);
+    }
+
+    @Test
+    void endedSessionFallsBackToDefaultTenant() {
+        ChatSessions sessions = new ChatSessions("default");
+        sessions.setTenant("chat", "team-a");
+        sessions.end("chat");
+
+        assertEquals("default", sessions.tenantOf("chat"));
+        assertEquals("default", sessions.tenantOf(null));
+    }
+}
@@ -1,24 +1,39 @@
 import com.vaadin.demo.AiAssistant;
+import com.vaadin.demo.index.TenantIndexes;
+import com.vaadin.demo.rag.ChatSessions;
+import com.vaadin.demo.rag.SpeculativeQueryRouter;
 import com.vaadin.demo.views.ChatView;
 import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.messages.MessageInput;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.testbench.TestBenchTestCase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 import org.mockito.Mockito;
 
+import java.util.List;
+
 class ChatViewTest extends TestBenchTestCase {
     @Test
     void componentsCreated() {
         AiAssistant assistant = Mockito.mock(AiAssistant.class);
-        ChatView view = new ChatView(assistant);
+        TenantIndexes tenantIndexes = Mockito.mock(TenantIndexes.class);
+        Mockito.when(tenantIndexes.tenants()).thenReturn(List.of("default", "team-a"));
+        Mockito.when(tenantIndexes.defaultTenant()).thenReturn("default");
+        SpeculativeQueryRouter speculativeQueryRouter = Mockito.mock(SpeculativeQueryRouter.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ChatView view = new ChatView(assistant, new ChatSessions("default"), tenantIndexes, speculativeQueryRouter,
+                registry);
         UI ui = new UI();
         ui.add(view);
 
         assertEquals(3, view.getComponentCount());
-        assertTrue(view.getComponentAt(0) instanceof Button);
+        HorizontalLayout toolbar = (HorizontalLayout) view.getComponentAt(0);
+        assertTrue(toolbar.getChildren().anyMatch(Button.class::isInstance));
         assertTrue(view.getComponentAt(2) instanceof MessageInput);
+        assertNotNull(registry.find("chat.first.token").tag("outcome", "error").timer());
     }
 }